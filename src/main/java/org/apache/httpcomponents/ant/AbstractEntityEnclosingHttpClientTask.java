@@ -20,24 +20,62 @@ package org.apache.httpcomponents.ant;
 import java.net.URI;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.params.HttpProtocolParams;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 
 public abstract class AbstractEntityEnclosingHttpClientTask extends AbstractHttpClientTask {
 
-    private HttpEntity entity;
-
     private EntityNode entityNode;
 
+    private boolean expectContinue;
+
+    private Integer continueWait;
+
+    private String sentDigestProperty;
+
+    private CountingEntity sentEntity;
+
+    private DigestEntity sentDigestEntity;
+
+    private long sendTime;
+
     protected abstract HttpEntityEnclosingRequestBase buildEntityEnclosingRequest(URI u);
 
     public void add(EntityNode entity) {
-        if (this.entity != null) {
+        if (this.entityNode != null) {
             throw new BuildException("Only one entity is allowed");
         }
         this.entityNode = entity;
-        this.entity = entity.buildHttpEntity();
+    }
+
+    /**
+     * @param expectContinue
+     *            if <code>true</code>, the headers are sent first and the body only once the server answered 100 Continue, so a
+     *            request rejected by the server doesn't upload its body
+     */
+    public void setExpectContinue(boolean expectContinue) {
+        this.expectContinue = expectContinue;
+    }
+
+    /**
+     * @param continueWait
+     *            time in milliseconds to wait for the 100 Continue before sending the body anyway; defaults to 3000
+     */
+    public void setContinueWait(int continueWait) {
+        this.continueWait = continueWait;
+    }
+
+    /**
+     * @param sentDigestProperty
+     *            the property set to the hexadecimal digest of the sent request body, computed with the digest algorithm of the task
+     *            while the body is written
+     */
+    public void setSentDigestProperty(String sentDigestProperty) {
+        this.sentDigestProperty = sentDigestProperty;
     }
 
     public void addConfiguredEntity(BasicEntityNode entity) {
@@ -48,14 +86,64 @@ public abstract class AbstractEntityEnclosingHttpClientTask extends AbstractHttp
         add(entity);
     }
 
+    public void addConfiguredArchiveEntity(ArchiveEntityNode entity) {
+        add(entity);
+    }
+
+    @Override
+    void checkAsyncBatch() {
+        super.checkAsyncBatch();
+        if (expectContinue) {
+            throw unsupportedInAsyncBatch("expectContinue");
+        }
+    }
+
     @Override
     protected HttpEntityEnclosingRequestBase buildRequest(URI u) {
         HttpEntityEnclosingRequestBase request = buildEntityEnclosingRequest(u);
-        if (entity != null) {
+        sentEntity = null;
+        sentDigestEntity = null;
+        if (entityNode != null) {
+            // built only now so that no stream is opened while the build file is parsed
+            HttpEntity entity = entityNode.buildHttpEntity();
+            if (sentDigestProperty != null) {
+                sentDigestEntity = new DigestEntity(entity, getDigestAlgorithm());
+                entity = sentDigestEntity;
+            }
+            if (expectContinue) {
+                sentEntity = new CountingEntity(entity);
+                entity = sentEntity;
+            }
             request.setEntity(entity);
             entityNode.log(this, Project.MSG_VERBOSE);
         }
+        if (expectContinue) {
+            if (continueWait != null && continueWait < 0) {
+                throw new BuildException("The attribute 'continueWait' cannot be negative");
+            }
+            HttpProtocolParams.setUseExpectContinue(request.getParams(), true);
+            if (continueWait != null) {
+                request.getParams().setIntParameter(CoreProtocolPNames.WAIT_FOR_CONTINUE, continueWait);
+            }
+            sendTime = System.currentTimeMillis();
+        }
         return request;
     }
 
+    @Override
+    void handleResponse(HttpResponse response, boolean responseFileWritten) {
+        if (sentEntity != null && sentEntity.getCount() == 0 && sentEntity.getContentLength() != 0) {
+            long length = sentEntity.getContentLength();
+            log("The server answered " + response.getStatusLine().getStatusCode() + " after " + (System.currentTimeMillis() - sendTime)
+                    + " ms without asking for the body, " + (length > 0 ? length + " bytes" : "the whole body") + " not sent",
+                    Project.MSG_INFO);
+        }
+        if (sentDigestEntity != null && sentDigestEntity.isConsumed()) {
+            String digest = sentDigestEntity.getHexDigest();
+            log("Request body " + getDigestAlgorithm() + ": " + digest, Project.MSG_VERBOSE);
+            setNewProperty(sentDigestProperty, digest);
+        }
+        super.handleResponse(response, responseFileWritten);
+    }
+
 }
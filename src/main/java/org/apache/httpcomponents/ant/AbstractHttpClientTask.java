@@ -18,47 +18,93 @@
 package org.apache.httpcomponents.ant;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.KeyManagementException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.http.Header;
+import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.cache.CacheResponseStatus;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.conn.ssl.TrustStrategy;
-import org.apache.http.conn.ssl.X509HostnameVerifier;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.cache.CachingHttpClient;
 import org.apache.http.impl.conn.BasicClientConnectionManager;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.client.methods.ZeroCopyConsumer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
 import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.Reference;
 import org.apache.tools.ant.util.FileUtils;
 
 public abstract class AbstractHttpClientTask extends Task {
 
+    public static final String ENGINE_SYNC = "sync";
+
+    public static final String ENGINE_ASYNC = "async";
+
+    private static final String DEFAULT_ASYNC_CLIENT_ID = AbstractHttpClientTask.class.getName() + ".asyncClient";
+
+    private static final Object DEFAULT_ASYNC_CLIENT_LOCK = new Object();
+
+    static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<String>(Arrays.asList("GET", "HEAD", "OPTIONS", "TRACE", "PUT",
+            "DELETE"));
+
     private String uri;
 
     private List<HeaderNode> headers = new ArrayList<HeaderNode>();
@@ -77,10 +123,62 @@ public abstract class AbstractHttpClientTask extends Task {
 
     private String responseProperty;
 
+    private String cacheStatusProperty;
+
+    private int bodyPreviewSize = 4096;
+
+    private boolean compression;
+
+    private boolean decompress = true;
+
+    private String wireSizeProperty;
+
+    private String decodedSizeProperty;
+
+    private String digestAlgorithm = "SHA-256";
+
+    private String digestProperty;
+
+    private String expectedDigest;
+
+    private String publishedDigest;
+
     private CredentialNode credential;
 
+    private BearerNode bearer;
+
+    private String bearerToken;
+
     private SSLNode ssl;
 
+    private RetryNode retry;
+
+    private Integer connectTimeout;
+
+    private Integer socketTimeout;
+
+    private Long poolTimeout;
+
+    private Long deadline;
+
+    private Reference clientRef;
+
+    private Reference cookiesRef;
+
+    private String engine = ENGINE_SYNC;
+
+    private HttpClientNode clientNode;
+
+    private Map<String, String> bufferedProperties;
+
+    private volatile HttpUriRequest currentRequest;
+
+    private volatile boolean aborted;
+
+    private volatile Deadline activeDeadline;
+
+    private int responseStatus = -1;
+
     public void setUri(String uri) {
         this.uri = uri;
     }
@@ -126,15 +224,10 @@ public abstract class AbstractHttpClientTask extends Task {
     }
 
     public void add(CredentialNode credential) {
-        if (this.credential != null) {
+        if (this.credential != null || bearer != null) {
             throw new BuildException("Only one credential is allowed");
         }
-        if (credential.getUsername() == null) {
-            throw new BuildException("Missing attribute 'username' on credential");
-        }
-        if (credential.getPassword() == null) {
-            throw new BuildException("Missing attribute 'password' on credential");
-        }
+        credential.checkAttributes();
         this.credential = credential;
     }
 
@@ -142,22 +235,23 @@ public abstract class AbstractHttpClientTask extends Task {
         add(credential);
     }
 
+    public void add(BearerNode bearer) {
+        if (credential != null || this.bearer != null) {
+            throw new BuildException("Only one credential is allowed");
+        }
+        bearer.checkAttributes();
+        this.bearer = bearer;
+    }
+
+    public void addConfiguredBearer(BearerNode bearer) {
+        add(bearer);
+    }
+
     public void add(SSLNode ssl) {
         if (this.ssl != null) {
             throw new BuildException("Only one ssl setup is allowed");
         }
-        if (ssl.getTruststoreFile() == null) {
-            throw new BuildException("Missing attribute 'truststoreFile' on ssl setup");
-        }
-        if (ssl.getTruststorePassword() == null) {
-            throw new BuildException("Missing attribute 'truststorePassword' on ssl setup");
-        }
-        if (ssl.getKeystoreFile() != null && ssl.getKeystorePassword() == null) {
-            throw new BuildException("Missing attribute 'keystorePassword' on ssl setup");
-        }
-        if (ssl.getKeystoreFile() == null && ssl.getKeystorePassword() != null) {
-            throw new BuildException("Missing attribute 'keystoreFile' on ssl setup");
-        }
+        ssl.checkAttributes();
         this.ssl = ssl;
     }
 
@@ -165,6 +259,18 @@ public abstract class AbstractHttpClientTask extends Task {
         add(ssl);
     }
 
+    public void add(RetryNode retry) {
+        if (this.retry != null) {
+            throw new BuildException("Only one retry policy is allowed");
+        }
+        retry.checkAttributes();
+        this.retry = retry;
+    }
+
+    public void addConfiguredRetry(RetryNode retry) {
+        add(retry);
+    }
+
     public void setResponseFile(File responseFile) {
         this.responseFile = responseFile;
     }
@@ -173,51 +279,309 @@ public abstract class AbstractHttpClientTask extends Task {
         this.responseProperty = responseProperty;
     }
 
+    /**
+     * @param compression
+     *            if <code>true</code>, the server is told the response may be compressed with gzip or deflate
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * @param decompress
+     *            if <code>false</code>, a compressed response body is written into the response file or property as received
+     */
+    public void setDecompress(boolean decompress) {
+        this.decompress = decompress;
+    }
+
+    /**
+     * @param wireSizeProperty
+     *            the property set to the number of bytes of the response body as received
+     */
+    public void setWireSizeProperty(String wireSizeProperty) {
+        this.wireSizeProperty = wireSizeProperty;
+    }
+
+    /**
+     * @param decodedSizeProperty
+     *            the property set to the number of bytes of the response body once decompressed
+     */
+    public void setDecodedSizeProperty(String decodedSizeProperty) {
+        this.decodedSizeProperty = decodedSizeProperty;
+    }
+
+    /**
+     * @param digestAlgorithm
+     *            the algorithm of the computed digests: SHA-256, SHA-1 or MD5
+     */
+    public void setDigestAlgorithm(String digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    /**
+     * @param digestProperty
+     *            the property set to the hexadecimal digest of the response body, computed while the body is received
+     */
+    public void setDigestProperty(String digestProperty) {
+        this.digestProperty = digestProperty;
+    }
+
+    /**
+     * @param expectedDigest
+     *            the hexadecimal digest the response body should have; on a mismatch the response file is deleted and the task
+     *            fails
+     */
+    public void setExpectedDigest(String expectedDigest) {
+        this.expectedDigest = expectedDigest;
+    }
+
+    /**
+     * Set the digest the response body should have according to its publisher, when no expected digest is explicitly set
+     */
+    void setPublishedDigest(String publishedDigest) {
+        this.publishedDigest = publishedDigest;
+    }
+
+    /**
+     * @param bodyPreviewSize
+     *            the number of bytes logged in verbose mode from the beginning and from the end of a response body which is neither
+     *            written into a file nor into a property; such a body is then read to the end, while 0 disables the logging and
+     *            lets a large body be discarded with its connection
+     */
+    public void setBodyPreviewSize(int bodyPreviewSize) {
+        this.bodyPreviewSize = bodyPreviewSize;
+    }
+
+    /**
+     * @param cacheStatusProperty
+     *            the property set to 'hit', 'miss', 'validated' or 'generated' when the response went through the cache of the shared
+     *            client
+     */
+    public void setCacheStatusProperty(String cacheStatusProperty) {
+        this.cacheStatusProperty = cacheStatusProperty;
+    }
+
+    /**
+     * @param connectTimeout
+     *            time in milliseconds to wait for the connection to be established, overriding the one of the shared client
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @param socketTimeout
+     *            maximum time in milliseconds without receiving any data, overriding the one of the shared client
+     */
+    public void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+     * @param poolTimeout
+     *            time in milliseconds to wait for a free connection of the pool, overriding the one of the shared client
+     */
+    public void setPoolTimeout(long poolTimeout) {
+        this.poolTimeout = poolTimeout;
+    }
+
+    /**
+     * @param deadline
+     *            maximum time in milliseconds for the whole exchange, response body and retries included, overriding the one of the
+     *            shared client; the request is aborted once it is exceeded
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public void setClientRef(Reference clientRef) {
+        this.clientRef = clientRef;
+    }
+
+    /**
+     * @param cookiesRef
+     *            reference to an httpcookies store shared with other tasks, replacing the cookies of the client
+     */
+    public void setCookiesRef(Reference cookiesRef) {
+        this.cookiesRef = cookiesRef;
+    }
+
+    /**
+     * @param engine
+     *            'sync' to send the request with a blocking client, or 'async' to send it through a non-blocking one
+     */
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    String getEngine() {
+        return engine;
+    }
+
+    File getResponseFile() {
+        return responseFile;
+    }
+
+    String getResponseProperty() {
+        return responseProperty;
+    }
+
+    /**
+     * Set the properties of a response file found up to date without downloading it, as on a 304 response
+     */
+    void setUpToDateProperties(String digest) {
+        if (statusProperty != null) {
+            setNewProperty(statusProperty, Integer.toString(HttpStatus.SC_NOT_MODIFIED));
+        }
+        if (digestProperty != null) {
+            setNewProperty(digestProperty, digest);
+        }
+    }
+
+    /**
+     * Set the shared client to use when none has been explicitly configured on this task
+     */
+    void setDefaultClient(HttpClientNode clientNode) {
+        this.clientNode = clientNode;
+    }
+
+    boolean isClientConfigured() {
+        return clientRef != null || ssl != null;
+    }
+
+    boolean hasSSL() {
+        return ssl != null;
+    }
+
+    /**
+     * Keep the properties set by this task in memory until {@link #flushProperties()} is called
+     */
+    void bufferProperties() {
+        bufferedProperties = new LinkedHashMap<String, String>();
+    }
+
+    void flushProperties() {
+        if (bufferedProperties != null) {
+            for (Entry<String, String> property : bufferedProperties.entrySet()) {
+                getProject().setNewProperty(property.getKey(), property.getValue());
+            }
+            bufferedProperties = null;
+        }
+    }
+
+    /**
+     * Drop the properties kept in memory, the task having not completed
+     */
+    void discardProperties() {
+        bufferedProperties = null;
+    }
+
+    void setNewProperty(String name, String value) {
+        if (bufferedProperties == null) {
+            getProject().setNewProperty(name, value);
+        } else if (!bufferedProperties.containsKey(name)) {
+            bufferedProperties.put(name, value);
+        }
+    }
+
+    /**
+     * @return the status code of the last received response, or -1 if none was received
+     */
+    int getResponseStatus() {
+        return responseStatus;
+    }
+
+    /**
+     * Abort the request being sent, if any, and make the task fail before sending the next ones
+     */
+    void abort() {
+        aborted = true;
+        abortRequest();
+    }
+
+    /**
+     * Abort the request being sent, if any, the next executions of the task being left unaffected
+     */
+    void abortRequest() {
+        HttpUriRequest request = currentRequest;
+        if (request != null) {
+            request.abort();
+        }
+    }
+
+    boolean isAborted() {
+        return aborted;
+    }
+
+    void resetAbort() {
+        aborted = false;
+    }
+
+    private void checkAborted() {
+        Deadline d = activeDeadline;
+        if (aborted || (d != null && d.isExpired())) {
+            throw new BuildException("The request for '" + uri + "' has been aborted");
+        }
+    }
+
     abstract protected HttpUriRequest buildRequest(URI u);
 
     @Override
     public void execute() throws BuildException {
+        HttpContext context = new BasicHttpContext();
+        HttpUriRequest request = prepareRequest(context);
+        Long timeout = deadline;
+        if (timeout == null && getSharedClientNode() != null) {
+            timeout = getSharedClientNode().getDeadline();
+        }
+        Deadline d = timeout == null ? null : new Deadline(this, context, timeout);
+        activeDeadline = d;
+        try {
+            if (ENGINE_ASYNC.equals(engine)) {
+                executeAsync(request, context);
+            } else {
+                executeSync(request, context);
+            }
+        } catch (BuildException e) {
+            if (d != null && d.isExpired()) {
+                throw d.buildException(uri, e);
+            }
+            throw e;
+        } finally {
+            if (d != null) {
+                d.cancel();
+            }
+            activeDeadline = null;
+        }
+    }
+
+    /**
+     * Check the attributes and build the request to send. The per task state is kept in the context so that it doesn't leak into a
+     * shared client.
+     */
+    HttpUriRequest prepareRequest(HttpContext context) {
+        if (ENGINE_ASYNC.equals(engine)) {
+            checkAsyncEngine();
+        }
+        responseStatus = -1;
+        publishedDigest = null;
+        bearerToken = null;
         if (uri == null) {
             throw new BuildException("Missing attribute 'uri'");
         }
         if (responseFile != null && responseProperty != null) {
             throw new BuildException("Only one of 'reponseProperty' or 'reponseFile' attribute can be set");
         }
-
-        DefaultHttpClient client;
-        if (ssl != null) {
-            SchemeRegistry schemeRegistry = new SchemeRegistry();
-            String algorithm = SSLSocketFactory.TLS;
-            log("Loading trustore " + ssl.getTruststoreFile(), Project.MSG_VERBOSE);
-            KeyStore truststore = loadKeyStore("truststore", ssl.getTruststoreFile(), ssl.getTruststorePassword());
-            KeyStore keystore = null;
-            if (ssl.getKeystoreFile() != null) {
-                log("Loading keystore " + ssl.getKeystoreFile(), Project.MSG_VERBOSE);
-                keystore = loadKeyStore("keystore", ssl.getKeystoreFile(), ssl.getKeystorePassword());
-            }
-            SecureRandom secureRandom = null;
-            TrustStrategy trustStrategy = null;
-            X509HostnameVerifier x509HostnameVerifier = SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
-            SSLSocketFactory lSchemeSocketFactory;
-            try {
-                lSchemeSocketFactory = new SSLSocketFactory(algorithm, keystore, ssl.getKeystorePassword(), truststore, secureRandom, trustStrategy,
-                        x509HostnameVerifier);
-            } catch (KeyManagementException e) {
-                throw new BuildException("The SSL factory could not be setup", e);
-            } catch (UnrecoverableKeyException e) {
-                throw new BuildException("The SSL factory could not be setup", e);
-            } catch (NoSuchAlgorithmException e) {
-                throw new BuildException("The SSL factory could not be setup", e);
-            } catch (KeyStoreException e) {
-                throw new BuildException("The SSL factory could not be setup", e);
-            }
-            log("Registring SSL factory", Project.MSG_VERBOSE);
-            schemeRegistry.register(new Scheme("https", 443, lSchemeSocketFactory));
-            HttpParams httpParams = new BasicHttpParams();
-            client = new DefaultHttpClient(new BasicClientConnectionManager(schemeRegistry), httpParams);
-        } else {
-            client = new DefaultHttpClient();
+        if (!ENGINE_SYNC.equals(engine) && !ENGINE_ASYNC.equals(engine)) {
+            throw new BuildException("Unsupported engine " + engine);
         }
+        checkTimeouts(connectTimeout, socketTimeout, poolTimeout, deadline);
+        DigestEntity.getMessageDigest(digestAlgorithm);
 
         URI u;
         try {
@@ -227,10 +591,32 @@ public abstract class AbstractHttpClientTask extends Task {
         }
 
         if (credential != null) {
-            log("Basic Authetication: username=" + credential.getUsername() + " password=" + credential.getPassword().replaceAll(".", "*"),
-                    Project.MSG_VERBOSE);
-            client.getCredentialsProvider().setCredentials(new AuthScope(u.getHost(), u.getPort()),
+            log((credential.isPreemptive() ? "Preemptive " : "") + credential.getScheme() + " authentication: username="
+                    + credential.getUsername() + " password=" + credential.getPassword().replaceAll(".", "*"), Project.MSG_VERBOSE);
+            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(new AuthScope(u.getHost(), u.getPort()),
                     new UsernamePasswordCredentials(credential.getUsername(), credential.getPassword()));
+            context.setAttribute(ClientContext.CREDS_PROVIDER, credentialsProvider);
+            if (credential.isPreemptive()) {
+                AuthCache authCache = SharedAuthCache.getInstance(getProject()).getAuthCache(credential);
+                HttpHost host = new HttpHost(u.getHost(), u.getPort(), u.getScheme());
+                if (CredentialNode.SCHEME_BASIC.equals(credential.getScheme()) && authCache.get(host) == null) {
+                    authCache.put(host, new BasicScheme());
+                }
+                context.setAttribute(ClientContext.AUTH_CACHE, authCache);
+                context.setAttribute(ClientContext.AUTHSCHEME_REGISTRY, SharedAuthCache.createAuthSchemeRegistry());
+            }
+        }
+
+        if (cookiesRef != null) {
+            Object node = cookiesRef.getReferencedObject(getProject());
+            if (!(node instanceof CookieStoreNode)) {
+                throw new BuildException("The reference '" + cookiesRef.getRefId() + "' is not an httpcookies");
+            }
+            context.setAttribute(ClientContext.COOKIE_STORE, ((CookieStoreNode) node).getCookieStore(this));
+        } else {
+            // otherwise a shared client would pass the cookies of a task to the unrelated next ones
+            context.setAttribute(ClientContext.COOKIE_STORE, new BasicCookieStore());
         }
 
         HttpUriRequest request = buildRequest(u);
@@ -244,147 +630,665 @@ public abstract class AbstractHttpClientTask extends Task {
                 request.addHeader(header.getName(), header.getValue());
             }
         }
+        if (bearer != null && !request.containsHeader("Authorization")) {
+            bearerToken = bearer.getToken(this);
+            log("Bearer authentication: token=" + bearerToken.replaceAll(".", "*"), Project.MSG_VERBOSE);
+            request.addHeader("Authorization", "Bearer " + bearerToken);
+        }
+        setTimeouts(request.getParams(), connectTimeout, socketTimeout, poolTimeout);
 
-        HttpResponse response;
+        if (compression && !request.containsHeader("Accept-Encoding")) {
+            if (ENGINE_ASYNC.equals(engine) && responseFile != null) {
+                log("The async engine writes the response file as received, compression is not requested", Project.MSG_VERBOSE);
+            } else {
+                request.addHeader("Accept-Encoding", "gzip, deflate");
+            }
+        }
+        return request;
+    }
+
+    static void checkTimeouts(Integer connectTimeout, Integer socketTimeout, Long poolTimeout, Long deadline) {
+        if ((connectTimeout != null && connectTimeout < 0) || (socketTimeout != null && socketTimeout < 0)
+                || (poolTimeout != null && poolTimeout < 0) || (deadline != null && deadline < 0)) {
+            throw new BuildException("The timeouts cannot be negative");
+        }
+    }
+
+    /**
+     * Set the timeouts which are not <code>null</code> on the parameters of a client or of a request
+     */
+    static void setTimeouts(HttpParams params, Integer connectTimeout, Integer socketTimeout, Long poolTimeout) {
+        if (connectTimeout != null) {
+            HttpConnectionParams.setConnectionTimeout(params, connectTimeout);
+        }
+        if (socketTimeout != null) {
+            HttpConnectionParams.setSoTimeout(params, socketTimeout);
+        }
+        if (poolTimeout != null) {
+            HttpClientParams.setConnectionManagerTimeout(params, poolTimeout);
+        }
+    }
+
+    HttpClientNode getSharedClientNode() {
+        if (clientRef == null) {
+            return clientNode;
+        }
+        if (ssl != null) {
+            throw new BuildException("The ssl setup should be declared on the referenced httpclient when 'clientref' is set");
+        }
+        Object node = clientRef.getReferencedObject(getProject());
+        if (!(node instanceof HttpClientNode)) {
+            throw new BuildException("The reference '" + clientRef.getRefId() + "' is not an httpclient");
+        }
+        return (HttpClientNode) node;
+    }
+
+    private void executeSync(HttpUriRequest request, HttpContext context) {
+        checkAborted();
+        HttpClientNode sharedClientNode = getSharedClientNode();
+        boolean sharedClient = sharedClientNode != null;
+        HttpClient client = sharedClient ? sharedClientNode.getClient(this) : buildOwnClient(getMaxConnections());
+
+        boolean released = false;
+        currentRequest = request;
         try {
+            if (aborted) {
+                // abort() has been called before the request could be reached
+                request.abort();
+            }
+            sendSync(client, request, context);
+            released = true;
+        } finally {
+            currentRequest = null;
+            if (!sharedClient) {
+                client.getConnectionManager().shutdown();
+            } else if (!released) {
+                // don't give back to the pool a connection with a partially read response
+                request.abort();
+            }
+        }
+    }
+
+    /**
+     * @return a blocking client for this task only, with its ssl setup if any, to shut down once used
+     */
+    private HttpClient buildOwnClient(int maxConnections) {
+        if (ssl != null) {
+            SchemeRegistry schemeRegistry = new SchemeRegistry();
+            SSLSocketFactory lSchemeSocketFactory = ssl.buildSSLSocketFactory(this);
+            log("Registring SSL factory", Project.MSG_VERBOSE);
+            schemeRegistry.register(new Scheme("https", 443, lSchemeSocketFactory));
+            if (maxConnections > 1) {
+                return new DefaultHttpClient(buildPoolingConnectionManager(schemeRegistry, maxConnections));
+            }
+            HttpParams httpParams = new BasicHttpParams();
+            return new DefaultHttpClient(new BasicClientConnectionManager(schemeRegistry), httpParams);
+        }
+        if (maxConnections > 1) {
+            return new DefaultHttpClient(buildPoolingConnectionManager(SchemeRegistryFactory.createDefault(), maxConnections));
+        }
+        return new DefaultHttpClient();
+    }
+
+    private ClientConnectionManager buildPoolingConnectionManager(SchemeRegistry schemeRegistry, int maxConnections) {
+        PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(schemeRegistry);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        return connectionManager;
+    }
+
+    /**
+     * Send a request on behalf of the task, like the one fetching its token, through the blocking client the task is configured with,
+     * so it gets the same ssl setup and the same timeouts
+     */
+    <T> T executeSideRequest(HttpUriRequest request, ResponseHandler<? extends T> handler) throws IOException {
+        setTimeouts(request.getParams(), connectTimeout, socketTimeout, poolTimeout);
+        HttpClientNode sharedClientNode = getSharedClientNode();
+        if (sharedClientNode != null) {
+            return sharedClientNode.getClient(this).execute(request, handler);
+        }
+        HttpClient client = buildOwnClient(1);
+        try {
+            return client.execute(request, handler);
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    /**
+     * @return the number of connections this task may open at the same time when it doesn't use a shared client
+     */
+    int getMaxConnections() {
+        return 1;
+    }
+
+    /**
+     * Send the request with the blocking client and handle its response
+     */
+    void sendSync(HttpClient client, HttpUriRequest request, HttpContext context) {
+        handleResponse(executeRequest(client, request, context), false);
+    }
+
+    HttpResponse executeRequest(HttpClient client, HttpUriRequest request, HttpContext context) {
+        HttpResponse response;
+        Deadline d = activeDeadline;
+        for (int attempt = 1;; attempt++) {
+            checkAborted();
+            if (d != null) {
+                d.requestStarted();
+            }
             try {
-                response = client.execute(request);
+                response = client.execute(request, context);
             } catch (ClientProtocolException e) {
                 throw new BuildException("HTTP error on request for '" + uri + "'", e);
             } catch (IOException e) {
+                if (retryAfterFailure(request, attempt, e)) {
+                    continue;
+                }
                 throw new BuildException("I/O error on request for '" + uri + "'", e);
             }
-            log("Response: " + response.getStatusLine(), Project.MSG_INFO);
-
-            if (statusProperty != null) {
-                getProject().setNewProperty(statusProperty, Integer.toString(response.getStatusLine().getStatusCode()));
+            if (!retryAfterResponse(request, attempt, response)) {
+                break;
+            }
+        }
+        if (d != null) {
+            d.responseReceived();
+        }
+        CacheResponseStatus cacheStatus = (CacheResponseStatus) context.getAttribute(CachingHttpClient.CACHE_RESPONSE_STATUS);
+        if (cacheStatus != null) {
+            String status;
+            switch (cacheStatus) {
+            case CACHE_HIT:
+                status = "hit";
+                break;
+            case CACHE_MISS:
+                status = "miss";
+                break;
+            case VALIDATED:
+                status = "validated";
+                break;
+            default:
+                status = "generated";
             }
-            if (statusReasonProperty != null) {
-                getProject().setNewProperty(statusReasonProperty, response.getStatusLine().getReasonPhrase());
+            log("Cache " + status + " for " + request.getURI(), Project.MSG_VERBOSE);
+            if (cacheStatusProperty != null) {
+                setNewProperty(cacheStatusProperty, status);
             }
-
-            log("Response headers: ", Project.MSG_VERBOSE);
-            for (Header header : response.getAllHeaders()) {
-                log("    " + header.getName() + ": " + header.getValue(), Project.MSG_VERBOSE);
-                if (reponseHeaderPropertyPrefix != null) {
-                    getProject().setNewProperty(reponseHeaderPropertyPrefix + header.getName(), header.getValue());
-                }
+            if (client instanceof CachingHttpClient) {
+                CachingHttpClient cachingClient = (CachingHttpClient) client;
+                log("HTTP cache: " + cachingClient.getCacheHits() + " hits, " + cachingClient.getCacheMisses() + " misses, "
+                        + cachingClient.getCacheUpdates() + " revalidations", Project.MSG_VERBOSE);
             }
+        }
+        return response;
+    }
 
-            for (ResponseHeaderNode responseHeader : responseHeaders) {
-                Header[] header = response.getHeaders(responseHeader.getName());
-                if (header != null && header.length > 0) {
-                    if (header.length > 1) {
-                        getProject().log(
-                                header.length + " headers were found matching '" + responseHeader.getName() + "'. The property "
-                                        + responseHeader.getProperty() + "' will be set only to the first match", Project.MSG_WARN);
+    private void executeAsync(HttpUriRequest request, HttpContext context) {
+        HttpAsyncClient client;
+        HttpClientNode sharedClientNode = getSharedClientNode();
+        if (sharedClientNode == null && ssl == null) {
+            sharedClientNode = getDefaultAsyncClientNode(getProject());
+        }
+        boolean sharedClient = sharedClientNode != null;
+        if (sharedClient) {
+            client = sharedClientNode.getAsyncClient(this);
+        } else {
+            // an own ssl setup, the client is not shared
+            HttpClientNode clientNode = new HttpClientNode();
+            clientNode.setProject(getProject());
+            clientNode.setIoThreads(1);
+            if (ssl != null) {
+                clientNode.add(ssl);
+            }
+            sharedClientNode = clientNode;
+            client = clientNode.getAsyncClient(this);
+        }
+        try {
+            HttpResponse response;
+            for (int attempt = 1;; attempt++) {
+                Future<HttpResponse> future = sendAsync(client, request, context, null);
+                Deadline d = activeDeadline;
+                try {
+                    response = d == null ? future.get() : future.get(d.getRemaining(), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    d.expire("exchanging with the server");
+                    throw new BuildException("No response received for '" + uri + "'", e);
+                } catch (InterruptedException e) {
+                    future.cancel(true);
+                    throw new BuildException("Interrupted while waiting for the response of '" + uri + "'", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException && !(e.getCause() instanceof ClientProtocolException)
+                            && retryAfterFailure(request, attempt, (IOException) e.getCause())) {
+                        continue;
                     }
-                    getProject().setNewProperty(responseHeader.getProperty(), header[0].getValue());
+                    throw buildRequestException(e.getCause());
+                }
+                if (!retryAfterResponse(request, attempt, response)) {
+                    break;
                 }
             }
+            handleAsyncResponse(response);
+        } finally {
+            if (!sharedClient) {
+                sharedClientNode.shutdown();
+            }
+        }
+    }
 
-            HttpEntity entity = response.getEntity();
-            if (entity == null) {
-                if (responseFile != null) {
-                    log("No response body, nothing written into " + responseFile, Project.MSG_VERBOSE);
-                    try {
-                        responseFile.createNewFile();
-                    } catch (IOException e) {
-                        throw new BuildException("The response file '" + responseFile + "' could not be created", e);
-                    }
-                } else if (responseProperty != null) {
-                    log("No response body, property " + responseProperty + " not set", Project.MSG_VERBOSE);
+    /**
+     * @return the client of the tasks using the async engine without any client nor ssl setup of their own, so their I/O reactor is
+     *         started once per project rather than once per task; it is shut down when the build finishes
+     */
+    private static HttpClientNode getDefaultAsyncClientNode(Project project) {
+        synchronized (DEFAULT_ASYNC_CLIENT_LOCK) {
+            HttpClientNode clientNode = (HttpClientNode) project.getReference(DEFAULT_ASYNC_CLIENT_ID);
+            if (clientNode == null) {
+                clientNode = new HttpClientNode();
+                clientNode.setProject(project);
+                clientNode.setIoThreads(1);
+                project.addReference(DEFAULT_ASYNC_CLIENT_ID, clientNode);
+            }
+            return clientNode;
+        }
+    }
+
+    /**
+     * Reject the options which are not supported when the request is sent in a batch by the async engine of httpparallel, rather than
+     * ignoring them
+     */
+    void checkAsyncBatch() {
+        checkAsyncEngine();
+        if (retry != null) {
+            throw unsupportedInAsyncBatch("retry");
+        }
+        if (deadline != null || (getSharedClientNode() != null && getSharedClientNode().getDeadline() != null)) {
+            throw unsupportedInAsyncBatch("deadline");
+        }
+        if (poolTimeout != null) {
+            throw unsupportedInAsyncBatch("poolTimeout");
+        }
+    }
+
+    /**
+     * Check that the options of the task are supported by the async engine, whether the task runs alone or in a parallel run
+     */
+    void checkAsyncEngine() {
+        // every option is supported by default
+    }
+
+    BuildException unsupportedInAsyncEngine(String option) {
+        return new BuildException("The option '" + option + "' of " + getTaskName()
+                + " is not supported by the async engine, use the sync engine");
+    }
+
+    BuildException unsupportedInAsyncBatch(String option) {
+        return new BuildException("The option '" + option + "' of " + getTaskName()
+                + " is not supported by the async engine of a parallel run, use the sync engine");
+    }
+
+    /**
+     * Wait before sending the request again if the I/O error is to be retried
+     * 
+     * @return <code>true</code> if the request should be sent again
+     */
+    private boolean retryAfterFailure(HttpUriRequest request, int attempt, IOException e) {
+        if (retry == null || !retry.isRetriedOnIO() || !isRetryable(request, attempt)) {
+            return false;
+        }
+        waitBeforeRetry(request, attempt, retry.getDelay(attempt, null), "I/O error: " + e.getMessage());
+        return true;
+    }
+
+    /**
+     * Release the response and wait before sending the request again if its status is to be retried
+     * 
+     * @return <code>true</code> if the request should be sent again
+     */
+    private boolean retryAfterResponse(HttpUriRequest request, int attempt, HttpResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        if (retry == null || !retry.isRetriedOn(status) || !isRetryable(request, attempt)) {
+            return false;
+        }
+        long delay = retry.getDelay(attempt, response);
+        if (response.getEntity() != null) {
+            try {
+                // small bodies are read so that the connection goes back to the pool
+                BodyLogger.discard(response.getEntity());
+            } catch (IOException e) {
+                log("The response to retry could not be released: " + e.getMessage(), Project.MSG_VERBOSE);
+            }
+        }
+        waitBeforeRetry(request, attempt, delay, "Response: " + response.getStatusLine());
+        return true;
+    }
+
+    private boolean isRetryable(HttpUriRequest request, int attempt) {
+        if (attempt >= retry.getAttempts() || request.isAborted()) {
+            return false;
+        }
+        if (!retry.isForce() && !IDEMPOTENT_METHODS.contains(request.getMethod())) {
+            log(request.getMethod() + " is not idempotent, it is not retried", Project.MSG_VERBOSE);
+            return false;
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null && !entity.isRepeatable()) {
+                log("The request body cannot be sent again, the request is not retried", Project.MSG_VERBOSE);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void waitBeforeRetry(HttpUriRequest request, int attempt, long delay, String cause) {
+        log(cause + ", retrying " + request.getMethod() + " to " + request.getURI() + " in " + delay + " ms (attempt " + (attempt + 1)
+                + " of " + retry.getAttempts() + ")", Project.MSG_WARN);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BuildException("Interrupted while waiting to retry the request for '" + uri + "'", e);
+        }
+    }
+
+    /**
+     * Send the request through the non-blocking client. The response body is buffered in memory, unless a response file is set in which
+     * case it is directly transfered from the socket into the file.
+     */
+    Future<HttpResponse> sendAsync(HttpAsyncClient client, HttpUriRequest request, HttpContext context, FutureCallback<HttpResponse> callback) {
+        HttpAsyncResponseConsumer<HttpResponse> consumer;
+        if (responseFile != null) {
+            consumer = new ZeroCopyConsumer<HttpResponse>(responseFile) {
+                @Override
+                protected HttpResponse process(HttpResponse response, File file, ContentType contentType) {
+                    return response;
                 }
-            } else if (responseFile != null) {
-                log("Response body written into " + responseFile, Project.MSG_VERBOSE);
-                FileOutputStream out;
-                try {
-                    out = new FileOutputStream(responseFile);
-                } catch (FileNotFoundException e) {
-                    throw new BuildException("The response could not be written into " + responseFile, e);
+            };
+        } else {
+            consumer = HttpAsyncMethods.createConsumer();
+        }
+        return client.execute(HttpAsyncMethods.create(request), consumer, context, callback);
+    }
+
+    void handleAsyncResponse(HttpResponse response) {
+        handleResponse(response, responseFile != null);
+    }
+
+    BuildException buildRequestException(Throwable cause) {
+        if (cause instanceof BuildException) {
+            return (BuildException) cause;
+        }
+        if (cause instanceof ClientProtocolException) {
+            return new BuildException("HTTP error on request for '" + uri + "'", cause);
+        }
+        return new BuildException("I/O error on request for '" + uri + "'", cause);
+    }
+
+    /**
+     * Set the properties and write the response body as configured.
+     * 
+     * @param responseFileWritten
+     *            <code>true</code> if the response body has already been written into the response file
+     */
+    void handleResponse(HttpResponse response, boolean responseFileWritten) {
+        log("Response: " + response.getStatusLine(), Project.MSG_INFO);
+        responseStatus = response.getStatusLine().getStatusCode();
+        if (bearerToken != null && responseStatus == HttpStatus.SC_UNAUTHORIZED) {
+            log("The bearer token has been rejected, it won't be reused", Project.MSG_VERBOSE);
+            bearer.invalidate(getProject(), bearerToken);
+        }
+
+        if (statusProperty != null) {
+            setNewProperty(statusProperty, Integer.toString(response.getStatusLine().getStatusCode()));
+        }
+        if (statusReasonProperty != null) {
+            setNewProperty(statusReasonProperty, response.getStatusLine().getReasonPhrase());
+        }
+
+        log("Response headers: ", Project.MSG_VERBOSE);
+        for (Header header : response.getAllHeaders()) {
+            log("    " + header.getName() + ": " + header.getValue(), Project.MSG_VERBOSE);
+            if (reponseHeaderPropertyPrefix != null) {
+                setNewProperty(reponseHeaderPropertyPrefix + header.getName(), header.getValue());
+            }
+        }
+
+        for (ResponseHeaderNode responseHeader : responseHeaders) {
+            Header[] header = response.getHeaders(responseHeader.getName());
+            if (header != null && header.length > 0) {
+                if (header.length > 1) {
+                    getProject().log(
+                            header.length + " headers were found matching '" + responseHeader.getName() + "'. The property "
+                                    + responseHeader.getProperty() + "' will be set only to the first match", Project.MSG_WARN);
                 }
+                setNewProperty(responseHeader.getProperty(), header[0].getValue());
+            }
+        }
+
+        HttpEntity entity = response.getEntity();
+        CountingEntity wireEntity = null;
+        CountingEntity decodedEntity = null;
+        boolean decoded = false;
+        if (entity != null && !responseFileWritten
+                && ((decompress && entity.getContentEncoding() != null) || wireSizeProperty != null || decodedSizeProperty != null)) {
+            wireEntity = new CountingEntity(entity);
+            HttpEntity decodingEntity = decode(wireEntity);
+            decoded = decodingEntity != wireEntity;
+            decodedEntity = new CountingEntity(decodingEntity);
+            entity = decodedEntity;
+        }
+        String expected = expectedDigest != null ? expectedDigest : publishedDigest;
+        boolean digesting = digestProperty != null || expected != null;
+        DigestEntity digestEntity = null;
+        if (entity != null && !responseFileWritten && digesting) {
+            digestEntity = new DigestEntity(entity, digestAlgorithm);
+            entity = digestEntity;
+        }
+        if (entity == null) {
+            if (responseFile != null) {
+                log("No response body, nothing written into " + responseFile, Project.MSG_VERBOSE);
                 try {
-                    InputStream in = getReponseInputStream(entity);
-                    try {
-                        byte[] buffer = new byte[1024 * 4];
-                        int n = 0;
-                        while (-1 != (n = in.read(buffer))) {
-                            out.write(buffer, 0, n);
-                        }
-                    } catch (IOException e) {
-                        throw new BuildException("The response could not be copied", e);
-                    } finally {
-                        FileUtils.close(in);
-                    }
-                } finally {
-                    FileUtils.close(out);
+                    responseFile.createNewFile();
+                } catch (IOException e) {
+                    throw new BuildException("The response file '" + responseFile + "' could not be created", e);
                 }
             } else if (responseProperty != null) {
-                log("Response body written into property " + responseProperty, Project.MSG_VERBOSE);
-                String content;
+                log("No response body, property " + responseProperty + " not set", Project.MSG_VERBOSE);
+            }
+        } else if (writeResponseSink(response, entity)) {
+            // written by the task itself
+        } else if (responseFile != null && responseFileWritten) {
+            log("Response body written into " + responseFile, Project.MSG_VERBOSE);
+            if (!responseFile.exists()) {
                 try {
-                    content = EntityUtils.toString(entity);
+                    responseFile.createNewFile();
                 } catch (IOException e) {
-                    throw new BuildException("The response could not be read", e);
-                }
-                String[] lines = content.split("\n");
-                log("---- Response body ----", Project.MSG_VERBOSE);
-                for (String line : lines) {
-                    log(line, Project.MSG_VERBOSE);
+                    throw new BuildException("The response file '" + responseFile + "' could not be created", e);
                 }
-                log("---- EOF ----", Project.MSG_VERBOSE);
-                getProject().setNewProperty(responseProperty, content);
-            } else {
-                if (entity != null) {
-                    String content;
-                    try {
-                        content = EntityUtils.toString(entity);
-                    } catch (IOException e) {
-                        throw new BuildException("The response could not be read", e);
-                    }
-                    String[] lines = content.split("\n");
-                    log("---- Response body ----", Project.MSG_VERBOSE);
-                    for (String line : lines) {
-                        log(line, Project.MSG_VERBOSE);
-                    }
-                    log("---- EOF ----", Project.MSG_VERBOSE);
+            }
+        } else if (responseFile != null) {
+            log("Response body written into " + responseFile, Project.MSG_VERBOSE);
+            writeResponseFile(entity, responseFile, false);
+        } else if (responseProperty != null) {
+            log("Response body written into property " + responseProperty, Project.MSG_VERBOSE);
+            String content;
+            try {
+                content = EntityUtils.toString(entity);
+            } catch (IOException e) {
+                throw new BuildException("The response could not be read", e);
+            }
+            log("---- Response body ----", Project.MSG_VERBOSE);
+            BodyLogger.logLines(this, content);
+            log("---- EOF ----", Project.MSG_VERBOSE);
+            setNewProperty(responseProperty, content);
+        } else {
+            try {
+                if (digesting) {
+                    EntityUtils.consume(entity);
+                } else if (bodyPreviewSize > 0) {
+                    BodyLogger.logPreview(this, entity, bodyPreviewSize);
+                } else {
+                    BodyLogger.discard(response.getEntity());
                 }
+            } catch (IOException e) {
+                throw new BuildException("The response could not be read", e);
             }
+        }
 
-            if (expectedStatus != null && expectedStatus != response.getStatusLine().getStatusCode()) {
-                throw new BuildException("Expecting " + expectedStatus + " but received " + response.getStatusLine().getStatusCode());
+        long wireSize = 0;
+        long decodedSize = 0;
+        if (wireEntity != null) {
+            wireSize = wireEntity.getCount();
+            decodedSize = decodedEntity.getCount();
+            if (decoded) {
+                log("Decoded " + decodedSize + " bytes from the " + wireSize + " bytes received", Project.MSG_VERBOSE);
             }
+        } else if (responseFileWritten && responseFile.exists()) {
+            wireSize = decodedSize = responseFile.length();
+        }
+        if (wireSizeProperty != null) {
+            setNewProperty(wireSizeProperty, Long.toString(wireSize));
+        }
+        if (decodedSizeProperty != null) {
+            setNewProperty(decodedSizeProperty, Long.toString(decodedSize));
+        }
 
-        } finally {
-            client.getConnectionManager().shutdown();
+        String digest = null;
+        // an up to date response file is checked as if downloaded again
+        if (digesting && (entity != null || responseFileWritten)) {
+            if (digestEntity != null) {
+                digest = digestEntity.getHexDigest();
+            } else if (responseFile != null && responseFile.exists()) {
+                // written by ranges or by the async engine, so read back
+                try {
+                    digest = DigestEntity.digest(responseFile, digestAlgorithm);
+                } catch (IOException e) {
+                    throw new BuildException("The digest of " + responseFile + " could not be computed", e);
+                }
+            }
+            if (digest != null) {
+                log("Response body " + digestAlgorithm + ": " + digest, Project.MSG_VERBOSE);
+                if (digestProperty != null) {
+                    setNewProperty(digestProperty, digest);
+                }
+            }
+        }
+
+        if (!isExpectedStatus(response.getStatusLine().getStatusCode())) {
+            throw new BuildException("Expecting " + expectedStatus + " but received " + response.getStatusLine().getStatusCode());
+        }
+
+        if (expected != null && digest == null) {
+            throw new BuildException("No response body to check against the expected digest");
+        }
+        if (expected != null && !expected.trim().equalsIgnoreCase(digest)) {
+            String message = "The " + digestAlgorithm + " digest of the response body is " + digest + " but " + expected.trim()
+                    + " was expected";
+            if (responseFile != null && responseFile.exists()) {
+                responseFile.delete();
+                message += ", " + responseFile + " deleted";
+            }
+            throw new BuildException(message);
         }
     }
 
-    private KeyStore loadKeyStore(String name, File file, String password) {
-        KeyStore keystore;
-        try {
-            keystore = KeyStore.getInstance(KeyStore.getDefaultType());
-        } catch (KeyStoreException e) {
-            throw new BuildException("Error while creating the " + name, e);
+    /**
+     * Write the response body, decoded if the task is decompressing, into a sink of the task rather than into the response file or
+     * property
+     * 
+     * @return <code>false</code> if the task has no sink of its own, the body being then left untouched
+     */
+    boolean writeResponseSink(HttpResponse response, HttpEntity entity) {
+        return false;
+    }
+
+    /**
+     * @return the entity decoding the content of the given one, if it is compressed and if the task is decompressing
+     */
+    private HttpEntity decode(HttpEntity entity) {
+        Header contentEncoding = entity.getContentEncoding();
+        if (!decompress || contentEncoding == null) {
+            return entity;
+        }
+        for (HeaderElement element : contentEncoding.getElements()) {
+            String encoding = element.getName().toLowerCase(Locale.ENGLISH);
+            if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+                return new GzipDecompressingEntity(entity);
+            }
+            if (encoding.equals("deflate")) {
+                return new DeflateDecompressingEntity(entity);
+            }
+            if (!encoding.equals("identity")) {
+                log("Unsupported content encoding " + encoding + ", the response body is kept encoded", Project.MSG_WARN);
+                return entity;
+            }
         }
-        FileInputStream in;
+        return entity;
+    }
+
+    boolean isExpectedStatus(int status) {
+        return expectedStatus == null || expectedStatus == status;
+    }
+
+    /**
+     * Copy the response body into the file, or at its end if <code>append</code> is <code>true</code>
+     */
+    void writeResponseFile(HttpEntity entity, File file, boolean append) {
+        FileOutputStream out;
         try {
-            in = new FileInputStream(file);
+            out = new FileOutputStream(file, append);
         } catch (FileNotFoundException e) {
-            throw new BuildException("The " + name + " file '" + file + "' could not be found", e);
+            throw new BuildException("The response could not be written into " + file, e);
         }
         try {
-            keystore.load(in, password.toCharArray());
-        } catch (NoSuchAlgorithmException e) {
-            throw new BuildException("The " + name + " could not be opened", e);
-        } catch (CertificateException e) {
-            throw new BuildException("The " + name + " could not be opened", e);
-        } catch (IOException e) {
-            throw new BuildException("The " + name + " could not be opened", e);
+            InputStream in = getReponseInputStream(entity);
+            try {
+                FileChannel channel = out.getChannel();
+                copy(in, channel, append ? channel.size() : 0);
+            } catch (IOException e) {
+                throw new BuildException("The response could not be copied", e);
+            } finally {
+                FileUtils.close(in);
+            }
         } finally {
-            FileUtils.close(in);
+            FileUtils.close(out);
+        }
+    }
+
+    /**
+     * Copy the stream into the file channel, from the given position, without moving the position of the channel. The stream is read by
+     * large chunks, so the underlying socket is read directly into the buffer.
+     * 
+     * @return the number of copied bytes
+     */
+    static long copy(InputStream in, FileChannel channel, long position) throws IOException {
+        return copy(in, channel, position, Long.MAX_VALUE - 1);
+    }
+
+    /**
+     * Copy at most <code>limit</code> bytes of the stream into the file channel, from the given position, without moving the position
+     * of the channel. The bytes beyond the limit are never written.
+     * 
+     * @return the number of copied bytes, or a number greater than the limit if the stream is longer
+     */
+    static long copy(InputStream in, FileChannel channel, long position, long limit) throws IOException {
+        long count = 0;
+        byte[] bytes = new byte[COPY_BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int n;
+        // one byte more than the limit is read, to detect a longer stream
+        while ((n = in.read(bytes, 0, (int) Math.min(bytes.length, limit - count + 1))) != -1) {
+            if (count + n > limit) {
+                return count + n;
+            }
+            buffer.clear();
+            buffer.limit(n);
+            while (buffer.hasRemaining()) {
+                count += channel.write(buffer, position + count);
+            }
         }
-        return keystore;
+        return count;
     }
 
     private InputStream getReponseInputStream(HttpEntity entity) {
@@ -0,0 +1,148 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarOutputStream;
+import org.apache.tools.zip.ZipEntry;
+import org.apache.tools.zip.ZipOutputStream;
+
+/**
+ * Entity packing resources into a zip or a tar.gz archive while it is written, so the archive is never stored. Its length being
+ * unknown, it is sent chunked.
+ */
+class ArchiveEntity extends AbstractHttpEntity {
+
+    static final String ZIP = "zip";
+
+    static final String TAR_GZ = "tar.gz";
+
+    private final List<Resource> resources;
+
+    private final String format;
+
+    ArchiveEntity(List<Resource> resources, String format) {
+        this.resources = resources;
+        this.format = format;
+        setChunked(true);
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public long getContentLength() {
+        return -1;
+    }
+
+    public boolean isStreaming() {
+        return false;
+    }
+
+    // the archive is written by writeTo, which the blocking client uses; the async engine reads it through a pipe
+    public InputStream getContent() throws IOException {
+        return new EntityPipeInputStream(this);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        // closing the archive stream flushes its last blocks, but the connection should stay open
+        OutputStream shield = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        if (ZIP.equals(format)) {
+            ZipOutputStream zip = new ZipOutputStream(shield);
+            zip.setEncoding("UTF-8");
+            for (Resource resource : resources) {
+                ZipEntry entry = new ZipEntry(getEntryName(resource));
+                entry.setTime(resource.getLastModified());
+                zip.putNextEntry(entry);
+                copy(resource.getInputStream(), zip);
+                zip.closeEntry();
+            }
+            zip.close();
+        } else {
+            TarOutputStream tar = new TarOutputStream(new GZIPOutputStream(shield, AbstractHttpClientTask.COPY_BUFFER_SIZE));
+            tar.setLongFileMode(TarOutputStream.LONGFILE_GNU);
+            for (Resource resource : resources) {
+                TarEntry entry = new TarEntry(getEntryName(resource));
+                entry.setModTime(resource.getLastModified());
+                long size = resource.getSize();
+                if (size != Resource.UNKNOWN_SIZE) {
+                    entry.setSize(size);
+                    tar.putNextEntry(entry);
+                    copy(resource.getInputStream(), tar);
+                } else {
+                    // the tar header needs the size before the content, like for a resource behind a URL
+                    File spool = File.createTempFile("httpant-archive", null);
+                    try {
+                        OutputStream spoolOut = new FileOutputStream(spool);
+                        try {
+                            copy(resource.getInputStream(), spoolOut);
+                        } finally {
+                            FileUtils.close(spoolOut);
+                        }
+                        entry.setSize(spool.length());
+                        tar.putNextEntry(entry);
+                        copy(new FileInputStream(spool), tar);
+                    } finally {
+                        spool.delete();
+                    }
+                }
+                tar.closeEntry();
+            }
+            tar.close();
+        }
+    }
+
+    private static String getEntryName(Resource resource) {
+        return resource.getName().replace('\\', '/');
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        try {
+            byte[] buffer = new byte[AbstractHttpClientTask.COPY_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            FileUtils.close(in);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.http.HttpEntity;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.types.ResourceCollection;
+
+/**
+ * Request body made of the nested resources packed into a zip or a tar.gz archive, the archive being built while it is sent
+ */
+public class ArchiveEntityNode extends EntityNode {
+
+    private String format = ArchiveEntity.ZIP;
+
+    private String contentType;
+
+    private List<ResourceCollection> resourceCollections = new ArrayList<ResourceCollection>();
+
+    /**
+     * @param format
+     *            'zip' or 'tar.gz'
+     */
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public void add(ResourceCollection resourceCollection) {
+        resourceCollections.add(resourceCollection);
+    }
+
+    @Override
+    public HttpEntity buildHttpEntity() {
+        if (!ArchiveEntity.ZIP.equals(format) && !ArchiveEntity.TAR_GZ.equals(format)) {
+            throw new BuildException("Unsupported archive format '" + format + "', expecting " + ArchiveEntity.ZIP + " or "
+                    + ArchiveEntity.TAR_GZ);
+        }
+        if (resourceCollections.isEmpty()) {
+            throw new BuildException("At least one nested resource collection is required");
+        }
+        List<Resource> resources = new ArrayList<Resource>();
+        for (ResourceCollection resourceCollection : resourceCollections) {
+            @SuppressWarnings("unchecked")
+            Iterator<Resource> it = resourceCollection.iterator();
+            while (it.hasNext()) {
+                Resource resource = it.next();
+                if (resource.isDirectory()) {
+                    continue;
+                }
+                if (!resource.isExists()) {
+                    throw new BuildException("The resource " + resource + " doesn't exist");
+                }
+                resources.add(resource);
+            }
+        }
+        ArchiveEntity entity = new ArchiveEntity(resources, format);
+        if (contentType != null) {
+            entity.setContentType(contentType);
+        } else if (ArchiveEntity.ZIP.equals(format)) {
+            entity.setContentType("application/zip");
+        } else {
+            entity.setContentType("application/x-gzip");
+        }
+        return entity;
+    }
+
+    @Override
+    public void log(Task task, int msgLevel) {
+        int size = 0;
+        for (ResourceCollection resourceCollection : resourceCollections) {
+            size += resourceCollection.size();
+        }
+        task.log("Request body packed into a " + format + " archive of " + size + " resources", msgLevel);
+    }
+}
@@ -18,12 +18,10 @@
 package org.apache.httpcomponents.ant;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.entity.AbstractHttpEntity;
-import org.apache.http.entity.BasicHttpEntity;
 import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.tools.ant.BuildException;
@@ -42,6 +40,8 @@ public class BasicEntityNode extends EntityNode {
 
     private String contentEncoding;
 
+    private String compress;
+
     public void setFile(File file) {
         this.file = file;
     }
@@ -70,8 +70,21 @@ public class BasicEntityNode extends EntityNode {
         this.contentEncoding = contentEncoding;
     }
 
+    /**
+     * Compress the body with <code>gzip</code> or <code>deflate</code> while it is sent
+     */
+    public void setCompress(String compress) {
+        this.compress = compress;
+    }
+
     @Override
     public HttpEntity buildHttpEntity() {
+        if (compress != null) {
+            CompressingEntity.checkCompression(compress);
+            if (contentEncoding != null) {
+                throw new BuildException("Only one of 'contentEncoding' or 'compress' attribute is supported");
+            }
+        }
         AbstractHttpEntity entity;
         if (file != null) {
             if (value != null || resource != null) {
@@ -91,14 +104,7 @@ public class BasicEntityNode extends EntityNode {
             if (file != null || value != null) {
                 throw new BuildException("Only one of 'file' or 'value' attribute or nested resource is supported");
             }
-            BasicHttpEntity basicEntity = new BasicHttpEntity();
-            try {
-                basicEntity.setContent(resource.getInputStream());
-            } catch (IOException e) {
-                throw new BuildException("I/O error while getting a stream out of the resource " + resource, e);
-            }
-            basicEntity.setContentLength(resource.getSize());
-            entity = basicEntity;
+            entity = new ResourceEntity(resource);
         } else {
             throw new BuildException("At least one of 'file' or 'value' attribute or nested resource is required");
         }
@@ -108,6 +114,9 @@ public class BasicEntityNode extends EntityNode {
         if (contentEncoding != null) {
             entity.setContentEncoding(contentEncoding);
         }
+        if (compress != null) {
+            return new CompressingEntity(entity, compress);
+        }
         return entity;
     }
 
@@ -125,5 +134,8 @@ public class BasicEntityNode extends EntityNode {
         } else if (resource != null) {
             task.log("Request body from resource: " + resource, msgLevel);
         }
+        if (compress != null) {
+            task.log("Request body compressed with " + compress, msgLevel);
+        }
     }
 }
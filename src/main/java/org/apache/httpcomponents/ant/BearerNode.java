@@ -0,0 +1,376 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Bearer token authentication. The token is either given as is, or obtained from an OAuth2 token endpoint with the client credentials
+ * grant.
+ * <p>
+ * The fetched tokens are kept in the project, so they are shared by its tasks, and optionally in a properties file readable by its owner
+ * only, until they expire. A token about to expire is refreshed by the first task needing it, while the other tasks keep using the
+ * current one. The token endpoint is called through the client the task is configured with.
+ */
+public class BearerNode {
+
+    private static final String REFERENCE_ID = BearerNode.class.getName() + ".tokens";
+
+    private static final Object REFERENCE_LOCK = new Object();
+
+    /**
+     * Assumed lifetime, in seconds, of a token delivered without <code>expires_in</code>
+     */
+    private static final long DEFAULT_EXPIRES_IN = 3600;
+
+    private String token;
+
+    private String tokenUri;
+
+    private String clientId;
+
+    private String clientSecret;
+
+    private String scope;
+
+    private long refreshMargin = 60;
+
+    private File cacheFile;
+
+    private int timeout = 30000;
+
+    /**
+     * @param token
+     *            a token to send as is
+     */
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    /**
+     * @param tokenUri
+     *            the token endpoint of the OAuth2 authorization server
+     */
+    public void setTokenUri(String tokenUri) {
+        this.tokenUri = tokenUri;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public void setClientSecret(String clientSecret) {
+        this.clientSecret = clientSecret;
+    }
+
+    public void setScope(String scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * @param refreshMargin
+     *            how many seconds before its expiry a token is refreshed, 60 by default
+     */
+    public void setRefreshMargin(long refreshMargin) {
+        this.refreshMargin = refreshMargin;
+    }
+
+    /**
+     * @param cacheFile
+     *            properties file keeping the fetched tokens until they expire, so the next builds don't fetch them again
+     */
+    public void setCacheFile(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * @param timeout
+     *            connect and read timeout in milliseconds of the token request, 30 seconds by default, unless the task sets its own
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    void checkAttributes() {
+        if ((token == null) == (tokenUri == null)) {
+            throw new BuildException("Exactly one of the attributes 'token' or 'tokenUri' is required on bearer");
+        }
+        if (tokenUri != null && (clientId == null || clientSecret == null)) {
+            throw new BuildException("The attributes 'clientId' and 'clientSecret' are required to fetch a token");
+        }
+        if (refreshMargin < 0) {
+            throw new BuildException("The refresh margin cannot be negative");
+        }
+        if (timeout < 0) {
+            throw new BuildException("The timeout cannot be negative");
+        }
+    }
+
+    /**
+     * @return the token to send, fetched if there is none valid
+     */
+    String getToken(AbstractHttpClientTask task) {
+        if (token != null) {
+            return token;
+        }
+        String key = getKey();
+        Map<String, Token> tokens = getTokens(task.getProject());
+        Token current;
+        synchronized (tokens) {
+            current = tokens.get(key);
+            if (current == null) {
+                current = new Token();
+                tokens.put(key, current);
+            }
+        }
+        synchronized (current) {
+            long now = System.currentTimeMillis();
+            if (current.value == null && cacheFile != null) {
+                load(current, key);
+            }
+            if (current.value != null && current.expiresAt - refreshMargin * 1000 > now) {
+                return current.value;
+            }
+            if (current.value != null && current.expiresAt > now && current.refreshing) {
+                // another task is refreshing it, this one is still valid
+                return current.value;
+            }
+            if (current.value == null || current.expiresAt <= now) {
+                // nothing usable, every task waits for the new token
+                fetch(current, key, task);
+                return current.value;
+            }
+            current.refreshing = true;
+        }
+        try {
+            Token refreshed = new Token();
+            fetch(refreshed, key, task);
+            synchronized (current) {
+                current.value = refreshed.value;
+                current.expiresAt = refreshed.expiresAt;
+                return current.value;
+            }
+        } finally {
+            synchronized (current) {
+                current.refreshing = false;
+            }
+        }
+    }
+
+    /**
+     * Forget a token rejected by a server, so the next task fetches a new one
+     */
+    void invalidate(Project project, String rejected) {
+        if (token != null) {
+            return;
+        }
+        Map<String, Token> tokens = getTokens(project);
+        synchronized (tokens) {
+            Token current = tokens.get(getKey());
+            if (current != null && rejected.equals(current.value)) {
+                tokens.remove(getKey());
+            }
+        }
+        if (cacheFile != null) {
+            synchronized (BearerNode.class) {
+                Properties properties = loadProperties();
+                if (rejected.equals(properties.getProperty(getKey() + ".token"))) {
+                    properties.remove(getKey() + ".token");
+                    properties.remove(getKey() + ".expires");
+                    storeProperties(properties);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Token> getTokens(Project project) {
+        synchronized (REFERENCE_LOCK) {
+            Map<String, Token> tokens = (Map<String, Token>) project.getReference(REFERENCE_ID);
+            if (tokens == null) {
+                tokens = new HashMap<String, Token>();
+                project.addReference(REFERENCE_ID, tokens);
+            }
+            return tokens;
+        }
+    }
+
+    private String getKey() {
+        return DigestUtils.sha256Hex(tokenUri + "|" + clientId + "|" + clientSecret + "|" + (scope == null ? "" : scope));
+    }
+
+    private void fetch(Token target, String key, AbstractHttpClientTask task) {
+        task.log("Fetching a bearer token from " + tokenUri + " for client " + clientId, Project.MSG_VERBOSE);
+        HttpPost post = new HttpPost(tokenUri);
+        post.addHeader(BasicScheme.authenticate(new UsernamePasswordCredentials(clientId, clientSecret), "UTF-8", false));
+        post.addHeader("Accept", "application/json");
+        List<NameValuePair> form = new ArrayList<NameValuePair>();
+        form.add(new BasicNameValuePair("grant_type", "client_credentials"));
+        if (scope != null) {
+            form.add(new BasicNameValuePair("scope", scope));
+        }
+        long now = System.currentTimeMillis();
+        String body;
+        try {
+            post.setEntity(new UrlEncodedFormEntity(form, "UTF-8"));
+            HttpConnectionParams.setConnectionTimeout(post.getParams(), timeout);
+            HttpConnectionParams.setSoTimeout(post.getParams(), timeout);
+            body = task.executeSideRequest(post, new ResponseHandler<String>() {
+                public String handleResponse(HttpResponse response) throws IOException {
+                    if (response.getStatusLine().getStatusCode() != 200) {
+                        EntityUtils.consume(response.getEntity());
+                        throw new HttpResponseException(response.getStatusLine().getStatusCode(), response.getStatusLine().toString());
+                    }
+                    return response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity(), "UTF-8");
+                }
+            });
+        } catch (IOException e) {
+            throw new BuildException("The token could not be fetched from " + tokenUri + ": " + e.getMessage(), e);
+        }
+        Map<String, String> members;
+        try {
+            members = Json.parseObject(body);
+        } catch (IllegalArgumentException e) {
+            throw new BuildException("The response of " + tokenUri + " is not a JSON object: " + e.getMessage());
+        }
+        target.value = members.get("access_token");
+        if (target.value == null || target.value.length() == 0) {
+            throw new BuildException("No access token in the response of " + tokenUri);
+        }
+        long expiresIn = DEFAULT_EXPIRES_IN;
+        if (members.get("expires_in") != null) {
+            try {
+                expiresIn = Long.parseLong(members.get("expires_in"));
+            } catch (NumberFormatException e) {
+                task.log("Invalid expires_in " + members.get("expires_in") + ", " + DEFAULT_EXPIRES_IN + " seconds assumed", Project.MSG_WARN);
+            }
+        }
+        target.expiresAt = now + expiresIn * 1000;
+        if (cacheFile != null) {
+            synchronized (BearerNode.class) {
+                Properties properties = loadProperties();
+                properties.setProperty(key + ".token", target.value);
+                properties.setProperty(key + ".expires", Long.toString(target.expiresAt));
+                storeProperties(properties);
+            }
+        }
+    }
+
+    private void load(Token target, String key) {
+        Properties properties;
+        synchronized (BearerNode.class) {
+            properties = loadProperties();
+        }
+        String value = properties.getProperty(key + ".token");
+        String expires = properties.getProperty(key + ".expires");
+        if (value != null && expires != null) {
+            try {
+                target.expiresAt = Long.parseLong(expires);
+                target.value = value;
+            } catch (NumberFormatException e) {
+                // a corrupted entry is just a cache miss
+            }
+        }
+    }
+
+    private Properties loadProperties() {
+        Properties properties = new Properties();
+        if (cacheFile.exists()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(cacheFile);
+                properties.load(in);
+            } catch (IOException e) {
+                // an unreadable cache is just empty
+                properties.clear();
+            } finally {
+                FileUtils.close(in);
+            }
+        }
+        return properties;
+    }
+
+    private void storeProperties(Properties properties) {
+        // drop the expired tokens on the way
+        long now = System.currentTimeMillis();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.endsWith(".expires")) {
+                String expires = properties.getProperty(name);
+                if (!expires.matches("\\d+") || Long.parseLong(expires) <= now) {
+                    String prefix = name.substring(0, name.length() - ".expires".length());
+                    properties.remove(name);
+                    properties.remove(prefix + ".token");
+                }
+            }
+        }
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            // the tokens are secrets, the file is restricted to its owner before they are written
+            PrivateFile.create(tmp);
+            out = new FileOutputStream(tmp);
+            properties.store(out, "Bearer tokens");
+            out.close();
+            out = null;
+            cacheFile.delete();
+            if (!tmp.renameTo(cacheFile)) {
+                throw new IOException("rename failed");
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw new BuildException("The token cache " + cacheFile + " could not be written", e);
+        } finally {
+            FileUtils.close(out);
+        }
+    }
+
+    private static class Token {
+
+        private String value;
+
+        private long expiresAt;
+
+        private boolean refreshing;
+    }
+}
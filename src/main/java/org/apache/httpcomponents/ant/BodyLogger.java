@@ -0,0 +1,119 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+
+/**
+ * Log the beginning and the end of a response body, without keeping more than these parts in memory
+ */
+class BodyLogger {
+
+    /**
+     * Bodies up to this size are read to the end so the connection can be reused, larger ones are discarded with their connection
+     */
+    private static final long CONSUME_LIMIT = 64 * 1024;
+
+    private static final Charset DEFAULT_CHARSET = Charset.forName("ISO-8859-1");
+
+    /**
+     * Log the first and the last <code>previewSize</code> bytes of the body, reading it to the end; the build listeners filter the
+     * verbose messages themselves
+     */
+    static void logPreview(Task task, HttpEntity entity, int previewSize) throws IOException {
+        Charset charset = ContentType.getOrDefault(entity).getCharset();
+        if (charset == null) {
+            charset = DEFAULT_CHARSET;
+        }
+        InputStream in = entity.getContent();
+        try {
+            task.log("---- Response body ----", Project.MSG_VERBOSE);
+            byte[] head = new byte[previewSize];
+            int headLength = 0;
+            int n;
+            while (headLength < previewSize && (n = in.read(head, headLength, previewSize - headLength)) != -1) {
+                headLength += n;
+            }
+            logLines(task, new String(head, 0, headLength, charset));
+
+            if (headLength == previewSize) {
+                // only the last bytes are kept, in a ring buffer
+                byte[] tail = new byte[previewSize];
+                int tailPosition = 0;
+                long tailCount = 0;
+                byte[] buffer = new byte[8 * 1024];
+                while ((n = in.read(buffer)) != -1) {
+                    if (n >= previewSize) {
+                        System.arraycopy(buffer, n - previewSize, tail, 0, previewSize);
+                        tailPosition = 0;
+                    } else {
+                        int first = Math.min(n, previewSize - tailPosition);
+                        System.arraycopy(buffer, 0, tail, tailPosition, first);
+                        System.arraycopy(buffer, first, tail, 0, n - first);
+                        tailPosition = (tailPosition + n) % previewSize;
+                    }
+                    tailCount += n;
+                }
+                if (tailCount > previewSize) {
+                    task.log("---- " + (tailCount - previewSize) + " bytes skipped ----", Project.MSG_VERBOSE);
+                    byte[] ordered = new byte[previewSize];
+                    System.arraycopy(tail, tailPosition, ordered, 0, previewSize - tailPosition);
+                    System.arraycopy(tail, 0, ordered, previewSize - tailPosition, tailPosition);
+                    logLines(task, new String(ordered, charset));
+                } else if (tailCount > 0) {
+                    logLines(task, new String(tail, 0, (int) tailCount, charset));
+                }
+            }
+            task.log("---- EOF ----", Project.MSG_VERBOSE);
+        } finally {
+            in.close();
+        }
+    }
+
+    static void logLines(Task task, String content) {
+        for (String line : content.split("\n")) {
+            task.log(line, Project.MSG_VERBOSE);
+        }
+    }
+
+    /**
+     * Release the connection of a body nobody is interested in, reading it only if it is small
+     */
+    static void discard(HttpEntity entity) throws IOException {
+        long length = entity.getContentLength();
+        if (length >= 0 && length <= CONSUME_LIMIT) {
+            EntityUtils.consume(entity);
+            return;
+        }
+        InputStream in = entity.getContent();
+        if (in instanceof ConnectionReleaseTrigger) {
+            ((ConnectionReleaseTrigger) in).abortConnection();
+        } else {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildListener;
+
+/**
+ * Listener of the end of the build only, to release what the nodes have opened during the build
+ */
+abstract class BuildFinishedListener implements BuildListener {
+
+    public abstract void buildFinished(BuildEvent event);
+
+    public void buildStarted(BuildEvent event) {
+        // nothing to do
+    }
+
+    public void targetStarted(BuildEvent event) {
+        // nothing to do
+    }
+
+    public void targetFinished(BuildEvent event) {
+        // nothing to do
+    }
+
+    public void taskStarted(BuildEvent event) {
+        // nothing to do
+    }
+
+    public void taskFinished(BuildEvent event) {
+        // nothing to do
+    }
+
+    public void messageLogged(BuildEvent event) {
+        // nothing to do
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.apache.http.entity.mime.content.ContentBody;
+
+/**
+ * Compress the wrapped part body while the multipart entity is written
+ */
+class CompressedContentBody extends AbstractContentBody {
+
+    private final ContentBody body;
+
+    private final String compression;
+
+    CompressedContentBody(ContentBody body, String compression) {
+        super(body.getMimeType());
+        this.body = body;
+        this.compression = compression;
+    }
+
+    public String getFilename() {
+        return body.getFilename();
+    }
+
+    public String getCharset() {
+        return body.getCharset();
+    }
+
+    public String getTransferEncoding() {
+        return MIME.ENC_BINARY;
+    }
+
+    public long getContentLength() {
+        return -1;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        DeflaterOutputStream compressed = CompressingEntity.compress(out, compression);
+        try {
+            body.writeTo(compressed);
+            compressed.finish();
+        } finally {
+            compressed.close();
+        }
+    }
+}
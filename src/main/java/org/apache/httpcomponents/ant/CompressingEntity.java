@@ -0,0 +1,162 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+import org.apache.tools.ant.BuildException;
+
+/**
+ * Compress the content of the wrapped entity while it is written to the connection. The compressed length is not known in advance so
+ * the entity is sent chunked. It is repeatable if the wrapped entity is, and its content can be read as a stream too, compressed while
+ * read.
+ */
+class CompressingEntity extends HttpEntityWrapper {
+
+    static final String GZIP = "gzip";
+
+    static final String DEFLATE = "deflate";
+
+    /**
+     * The header written by {@link GZIPOutputStream}
+     */
+    private static final byte[] GZIP_HEADER = new byte[] { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final String compression;
+
+    CompressingEntity(HttpEntity entity, String compression) {
+        super(entity);
+        this.compression = compression;
+    }
+
+    /**
+     * @throws BuildException if the compression is neither gzip nor deflate
+     */
+    static void checkCompression(String compression) {
+        if (!GZIP.equals(compression) && !DEFLATE.equals(compression)) {
+            throw new BuildException("Unsupported compression '" + compression + "', expecting " + GZIP + " or " + DEFLATE);
+        }
+    }
+
+    /**
+     * @return a stream compressing into the given one, whose finish() writes the end of the compressed data and whose close() only
+     *         releases the native memory of the deflater, the connection being left open
+     */
+    static DeflaterOutputStream compress(OutputStream out, String compression) throws IOException {
+        if (GZIP.equals(compression)) {
+            return new GZIPOutputStream(out, AbstractHttpClientTask.COPY_BUFFER_SIZE) {
+                @Override
+                public void close() {
+                    def.end();
+                }
+            };
+        }
+        return new DeflaterOutputStream(out) {
+            @Override
+            public void close() {
+                def.end();
+            }
+        };
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        return new BasicHeader("Content-Encoding", compression);
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isChunked() {
+        return true;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        InputStream in = wrappedEntity.getContent();
+        if (GZIP.equals(compression)) {
+            return gzip(in);
+        }
+        return new DeflaterInputStream(in);
+    }
+
+    private static InputStream gzip(InputStream in) {
+        final CRC32 crc = new CRC32();
+        // ended with the trailer, which closing the sequence reaches too
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        final InputStream body = new DeflaterInputStream(new CheckedInputStream(in, crc), deflater);
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            private int part;
+
+            public boolean hasMoreElements() {
+                return part < 3;
+            }
+
+            public InputStream nextElement() {
+                switch (part++) {
+                case 0:
+                    return new ByteArrayInputStream(GZIP_HEADER);
+                case 1:
+                    return body;
+                default:
+                    // the trailer is known once the body has been read
+                    byte[] trailer = new byte[8];
+                    writeIntLE(trailer, 0, crc.getValue());
+                    writeIntLE(trailer, 4, deflater.getBytesRead());
+                    deflater.end();
+                    return new ByteArrayInputStream(trailer);
+                }
+            }
+        });
+    }
+
+    private static void writeIntLE(byte[] bytes, int offset, long value) {
+        for (int i = 0; i < 4; i++) {
+            bytes[offset + i] = (byte) (value >> (8 * i));
+        }
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        DeflaterOutputStream compressed = compress(out, compression);
+        try {
+            wrappedEntity.writeTo(compressed);
+            compressed.finish();
+        } finally {
+            compressed.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.DataType;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * A cookie store shared by every task referencing it via its 'cookiesref' attribute, so the session opened by a task is reused by the
+ * next ones.
+ * <p>
+ * If a file is set, the cookies are loaded from it on first use and saved back when the build finishes, so the next builds reuse the
+ * session too. Only the persistent cookies are saved, one per line with their name, value, domain, path, expiry date and secure flag,
+ * and the file is readable by its owner only.
+ */
+public class CookieStoreNode extends DataType {
+
+    private File file;
+
+    private CookieStore cookieStore;
+
+    private Project listenedProject;
+
+    private SaveListener saveListener;
+
+    /**
+     * @param file
+     *            the file keeping the cookies between builds
+     */
+    public void setFile(File file) {
+        checkAttributesAllowed();
+        this.file = file;
+    }
+
+    public synchronized CookieStore getCookieStore(Task task) {
+        if (isReference()) {
+            return getRef().getCookieStore(task);
+        }
+        if (cookieStore == null) {
+            cookieStore = new BasicCookieStore();
+            if (file != null) {
+                load(task);
+                listenedProject = getProject() != null ? getProject() : task.getProject();
+                saveListener = new SaveListener();
+                listenedProject.addBuildListener(saveListener);
+            }
+        }
+        return cookieStore;
+    }
+
+    private void load(Task task) {
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 6 || !fields[4].matches("\\d+")) {
+                    throw new IOException("malformed line '" + line + "'");
+                }
+                BasicClientCookie cookie = new BasicClientCookie(decode(fields[0]), decode(fields[1]));
+                if (fields[2].length() > 0) {
+                    cookie.setDomain(decode(fields[2]));
+                }
+                if (fields[3].length() > 0) {
+                    cookie.setPath(decode(fields[3]));
+                }
+                cookie.setExpiryDate(new Date(Long.parseLong(fields[4])));
+                cookie.setSecure(Boolean.parseBoolean(fields[5]));
+                cookieStore.addCookie(cookie);
+            }
+            // the expired ones are dropped
+            cookieStore.clearExpired(new Date());
+            task.log("Loaded " + cookieStore.getCookies().size() + " cookies from " + file, Project.MSG_VERBOSE);
+        } catch (IOException e) {
+            // a corrupted or incompatible file is just an empty store
+            task.log("The cookies could not be read from " + file + ": " + e.getMessage(), Project.MSG_WARN);
+            cookieStore.clear();
+        } finally {
+            FileUtils.close(in);
+        }
+    }
+
+    public synchronized void save() {
+        if (cookieStore == null || file == null) {
+            return;
+        }
+        cookieStore.clearExpired(new Date());
+        List<Cookie> cookies = new ArrayList<Cookie>();
+        for (Cookie cookie : cookieStore.getCookies()) {
+            // the session cookies end with the build
+            if (cookie.isPersistent()) {
+                cookies.add(cookie);
+            }
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer out = null;
+        try {
+            PrivateFile.create(tmp);
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+            out.write("# name\tvalue\tdomain\tpath\texpiry\tsecure\n");
+            for (Cookie cookie : cookies) {
+                out.write(encode(cookie.getName()) + "\t" + encode(cookie.getValue()) + "\t" + encode(cookie.getDomain()) + "\t"
+                        + encode(cookie.getPath()) + "\t" + cookie.getExpiryDate().getTime() + "\t" + cookie.isSecure() + "\n");
+            }
+            out.close();
+            out = null;
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("rename failed");
+            }
+            log("Saved " + cookies.size() + " cookies to " + file, Project.MSG_VERBOSE);
+        } catch (IOException e) {
+            tmp.delete();
+            log("The cookies could not be saved to " + file + ": " + e.getMessage(), Project.MSG_WARN);
+        } finally {
+            FileUtils.close(out);
+        }
+        if (saveListener != null) {
+            listenedProject.removeBuildListener(saveListener);
+            saveListener = null;
+            listenedProject = null;
+        }
+        cookieStore = null;
+    }
+
+    private static String encode(String field) throws UnsupportedEncodingException {
+        return field == null ? "" : URLEncoder.encode(field, "UTF-8");
+    }
+
+    private static String decode(String field) throws UnsupportedEncodingException {
+        return URLDecoder.decode(field, "UTF-8");
+    }
+
+    private CookieStoreNode getRef() {
+        return (CookieStoreNode) getCheckedRef(CookieStoreNode.class, getDataTypeName());
+    }
+
+    private class SaveListener extends BuildFinishedListener {
+
+        public void buildFinished(BuildEvent event) {
+            save();
+        }
+    }
+}
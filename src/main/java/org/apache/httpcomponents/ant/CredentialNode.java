@@ -17,12 +17,24 @@
  */
 package org.apache.httpcomponents.ant;
 
+import java.util.Locale;
+
+import org.apache.tools.ant.BuildException;
+
 public class CredentialNode {
 
+    public static final String SCHEME_BASIC = "basic";
+
+    public static final String SCHEME_DIGEST = "digest";
+
     private String username;
 
     private String password;
 
+    private boolean preemptive = false;
+
+    private String scheme = SCHEME_BASIC;
+
     public void setUsername(String username) {
         this.username = username;
     }
@@ -31,6 +43,37 @@ public class CredentialNode {
         this.password = password;
     }
 
+    /**
+     * @param preemptive
+     *            if <code>true</code>, authenticate without waiting for a challenge, through an authentication cache shared by the tasks
+     *            of the project using the same credentials: the Basic credentials are sent upfront, and the Digest state negotiated by
+     *            a task, nonce included, is reused by the next ones
+     */
+    public void setPreemptive(boolean preemptive) {
+        this.preemptive = preemptive;
+    }
+
+    /**
+     * @param scheme
+     *            the scheme expected from the server, <code>basic</code> (the default) or <code>digest</code>. Only the Basic
+     *            credentials are sent on the very first request when preemptive.
+     */
+    public void setScheme(String scheme) {
+        this.scheme = scheme.toLowerCase(Locale.ENGLISH);
+    }
+
+    void checkAttributes() {
+        if (username == null) {
+            throw new BuildException("Missing attribute 'username' on credential");
+        }
+        if (password == null) {
+            throw new BuildException("Missing attribute 'password' on credential");
+        }
+        if (!SCHEME_BASIC.equals(scheme) && !SCHEME_DIGEST.equals(scheme)) {
+            throw new BuildException("Unsupported authentication scheme " + scheme);
+        }
+    }
+
     public String getUsername() {
         return username;
     }
@@ -39,4 +82,12 @@ public class CredentialNode {
         return password;
     }
 
+    public boolean isPreemptive() {
+        return preemptive;
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
 }
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.http.HttpConnection;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.tools.ant.BuildException;
+
+/**
+ * Abort the requests of a task which didn't complete in time, remembering in which phase of the exchange they were
+ */
+class Deadline {
+
+    private static final Timer TIMER = new Timer("httpclient-deadline", true);
+
+    private final long timeout;
+
+    private final long end;
+
+    private final HttpContext context;
+
+    private final TimerTask timerTask;
+
+    private volatile boolean responseReceived;
+
+    private volatile String expiredPhase;
+
+    Deadline(final AbstractHttpClientTask task, HttpContext context, long timeout) {
+        this.timeout = timeout;
+        this.end = System.currentTimeMillis() + timeout;
+        this.context = context;
+        timerTask = new TimerTask() {
+            @Override
+            public void run() {
+                expiredPhase = getPhase();
+                task.abortRequest();
+            }
+        };
+        TIMER.schedule(timerTask, timeout);
+    }
+
+    /**
+     * Mark the beginning of a new attempt of sending the request
+     */
+    void requestStarted() {
+        responseReceived = false;
+        context.removeAttribute(ExecutionContext.HTTP_CONNECTION);
+        context.removeAttribute(ExecutionContext.HTTP_REQ_SENT);
+    }
+
+    void responseReceived() {
+        responseReceived = true;
+    }
+
+    /**
+     * @return the milliseconds left before the deadline
+     */
+    long getRemaining() {
+        return Math.max(0, end - System.currentTimeMillis());
+    }
+
+    boolean isExpired() {
+        return expiredPhase != null;
+    }
+
+    /**
+     * Mark the deadline as expired while waiting in the given phase, for the requests which are not aborted by the timer
+     */
+    void expire(String phase) {
+        expiredPhase = phase;
+    }
+
+    void cancel() {
+        timerTask.cancel();
+    }
+
+    BuildException buildException(String uri, Throwable cause) {
+        return new BuildException("The deadline of " + timeout + " ms was exceeded while " + expiredPhase + " for '" + uri + "'", cause);
+    }
+
+    private String getPhase() {
+        if (responseReceived) {
+            return "reading the response body";
+        }
+        if (Boolean.TRUE.equals(context.getAttribute(ExecutionContext.HTTP_REQ_SENT))) {
+            return "waiting for the response";
+        }
+        HttpConnection connection = (HttpConnection) context.getAttribute(ExecutionContext.HTTP_CONNECTION);
+        if (connection == null) {
+            return "waiting for a connection";
+        }
+        if (!connection.isOpen()) {
+            return "connecting";
+        }
+        return "sending the request";
+    }
+}
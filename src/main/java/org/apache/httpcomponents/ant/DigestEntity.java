@@ -0,0 +1,108 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Compute the digest of the content of the wrapped entity while it is read, or while it is written
+ */
+class DigestEntity extends HttpEntityWrapper {
+
+    private final MessageDigest digest;
+
+    private boolean consumed;
+
+    DigestEntity(HttpEntity entity, String algorithm) {
+        super(entity);
+        this.digest = getMessageDigest(algorithm);
+    }
+
+    /**
+     * @throws BuildException
+     *             if the algorithm is not supported by the JVM
+     */
+    static MessageDigest getMessageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new BuildException("Unsupported digest algorithm " + algorithm + ", expecting SHA-256, SHA-1 or MD5", e);
+        }
+    }
+
+    /**
+     * @return the hexadecimal digest of the file, read by large chunks
+     */
+    static String digest(File file, String algorithm) throws IOException {
+        MessageDigest digest = getMessageDigest(algorithm);
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[AbstractHttpClientTask.COPY_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            FileUtils.close(in);
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     * @return <code>true</code> if the content has been read or written
+     */
+    boolean isConsumed() {
+        return consumed;
+    }
+
+    /**
+     * @return the hexadecimal digest of the bytes read or written so far
+     */
+    String getHexDigest() {
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        digest.reset();
+        consumed = true;
+        return new DigestInputStream(super.getContent(), digest);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        // a replayed entity is digested again from its beginning
+        digest.reset();
+        consumed = true;
+        super.writeTo(new DigestOutputStream(out, digest));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * The validators of a downloaded content, as sent by the server, stored in a properties file next to the downloaded file
+ */
+class DownloadMetadata {
+
+    private static final String ETAG = "etag";
+
+    private static final String LAST_MODIFIED = "lastModified";
+
+    private static final String URI = "uri";
+
+    private static final String LENGTH = "length";
+
+    private final File file;
+
+    private final Properties properties = new Properties();
+
+    DownloadMetadata(File file) {
+        this.file = file;
+        if (file.exists()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                properties.load(in);
+            } catch (IOException e) {
+                // unreadable metadata are just ignored, the content will be downloaded again
+                properties.clear();
+            } finally {
+                FileUtils.close(in);
+            }
+        }
+    }
+
+    String getETag() {
+        return properties.getProperty(ETAG);
+    }
+
+    String getLastModified() {
+        return properties.getProperty(LAST_MODIFIED);
+    }
+
+    String getUri() {
+        return properties.getProperty(URI);
+    }
+
+    void setUri(String uri) {
+        properties.setProperty(URI, uri);
+    }
+
+    long getLength() {
+        try {
+            return Long.parseLong(properties.getProperty(LENGTH, "-1"));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    void setLength(long length) {
+        properties.setProperty(LENGTH, Long.toString(length));
+    }
+
+    /**
+     * @return the strong ETag if any, otherwise the last modification date, or <code>null</code> if none is known
+     */
+    String getValidator() {
+        return getValidator(getETag(), getLastModified());
+    }
+
+    static String getValidator(String etag, String lastModified) {
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    void update(HttpResponse response) {
+        properties.clear();
+        Header etag = response.getFirstHeader("ETag");
+        if (etag != null) {
+            properties.setProperty(ETAG, etag.getValue());
+        }
+        Header lastModified = response.getFirstHeader("Last-Modified");
+        if (lastModified != null) {
+            properties.setProperty(LAST_MODIFIED, lastModified.getValue());
+        }
+    }
+
+    void store() {
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            properties.store(out, "Downloaded content metadata");
+        } catch (IOException e) {
+            throw new BuildException("The download metadata could not be written into " + file, e);
+        } finally {
+            FileUtils.close(out);
+        }
+    }
+
+    void delete() {
+        file.delete();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+import org.apache.http.HttpEntity;
+
+/**
+ * Content of an entity which is only written by <code>writeTo</code>, like an archive or a multipart body, made readable by writing it
+ * from another thread into a pipe. This is how the async engine, which reads the content of the entities it sends, gets it.
+ */
+class EntityPipeInputStream extends PipedInputStream {
+
+    private volatile IOException failure;
+
+    EntityPipeInputStream(final HttpEntity entity) throws IOException {
+        super(AbstractHttpClientTask.COPY_BUFFER_SIZE);
+        final PipedOutputStream out = new PipedOutputStream(this);
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    entity.writeTo(out);
+                } catch (IOException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    failure = new IOException("The entity could not be written", e);
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        // the reader has gone
+                    }
+                }
+            }
+        }, "httpant-entity-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+        int b = super.read();
+        if (b == -1) {
+            checkFailure();
+        }
+        return b;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n == -1) {
+            checkFailure();
+        }
+        return n;
+    }
+
+    /**
+     * A failed write must not look like the end of the content
+     */
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Cache storage keeping one file per entry in a directory, so the cache survives the build. The entries embed their body, so the
+ * directory is self-contained.
+ * <p>
+ * The total size of the directory is bounded: the least recently used entries are evicted first, the last use of an entry being
+ * tracked by the modification time of its file.
+ * <p>
+ * The directory may be shared, so an entry is read back only if it is made of the classes of a cache entry.
+ */
+class FileCacheStorage implements HttpCacheStorage {
+
+    private static final String SUFFIX = ".entry";
+
+    private final File dir;
+
+    private final long maxSize;
+
+    private static final Set<String> ENTRY_CLASSES = new HashSet<String>(Arrays.asList("[B", "[C", "java.util.ArrayList",
+            "java.util.Date", "java.util.HashMap", "org.apache.http.HttpVersion", "org.apache.http.ProtocolVersion",
+            "org.apache.http.client.cache.HttpCacheEntry", "org.apache.http.impl.client.cache.HeapResource",
+            "org.apache.http.message.BasicHeader", "org.apache.http.message.BasicStatusLine", "org.apache.http.message.BufferedHeader",
+            "org.apache.http.message.HeaderGroup", "org.apache.http.util.CharArrayBuffer"));
+
+    FileCacheStorage(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    public synchronized void putEntry(String key, HttpCacheEntry entry) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("The cache directory " + dir + " could not be created");
+        }
+        File file = getFile(key);
+        File tmp = new File(dir, file.getName() + ".tmp");
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeObject(entry);
+        } finally {
+            FileUtils.close(out);
+        }
+        file.delete();
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("The cache entry " + file + " could not be written");
+        }
+        evict();
+    }
+
+    public synchronized HttpCacheEntry getEntry(String key) throws IOException {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        HttpCacheEntry entry;
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            entry = (HttpCacheEntry) new EntryInputStream(in).readObject();
+        } catch (IOException e) {
+            // a corrupted, incompatible or foreign entry is just a cache miss
+            file.delete();
+            return null;
+        } catch (ClassNotFoundException e) {
+            file.delete();
+            return null;
+        } catch (ClassCastException e) {
+            file.delete();
+            return null;
+        } finally {
+            FileUtils.close(in);
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    public synchronized void removeEntry(String key) throws IOException {
+        getFile(key).delete();
+    }
+
+    public synchronized void updateEntry(String key, HttpCacheUpdateCallback callback) throws IOException {
+        HttpCacheEntry entry = callback.update(getEntry(key));
+        putEntry(key, entry);
+    }
+
+    private File getFile(String key) {
+        return new File(dir, DigestUtils.sha256Hex(key) + SUFFIX);
+    }
+
+    private void evict() {
+        File[] entries = dir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().endsWith(SUFFIX);
+            }
+        });
+        if (entries == null) {
+            return;
+        }
+        long size = 0;
+        for (File entry : entries) {
+            size += entry.length();
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        Arrays.sort(entries, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long diff = f1.lastModified() - f2.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < entries.length && size > maxSize; i++) {
+            long length = entries[i].length();
+            if (entries[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private static class EntryInputStream extends ObjectInputStream {
+
+        EntryInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!ENTRY_CLASSES.contains(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "not part of a cache entry");
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
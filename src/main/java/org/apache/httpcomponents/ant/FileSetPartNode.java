@@ -0,0 +1,88 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.types.ResourceCollection;
+
+/**
+ * One part per resource of the nested resource collections, all parts having the same name. The filename of a part is the name of
+ * its resource, relative to the base of its collection.
+ */
+public class FileSetPartNode extends PartNode {
+
+    private List<ResourceCollection> resourceCollections = new ArrayList<ResourceCollection>();
+
+    private String charset;
+
+    public void add(ResourceCollection resourceCollection) {
+        resourceCollections.add(resourceCollection);
+    }
+
+    public void setCharset(String charset) {
+        this.charset = charset;
+    }
+
+    @Override
+    public ContentBody buildContentBoby() {
+        throw new BuildException("A fileset part is made of several bodies");
+    }
+
+    @Override
+    public List<ContentBody> buildContentBodies() {
+        if (getName() == null) {
+            throw new BuildException("Missing 'name' attribute");
+        }
+        String mimeType = getMimeType();
+        if (mimeType == null) {
+            mimeType = "application/octet-stream";
+        }
+        List<ContentBody> bodies = new ArrayList<ContentBody>();
+        for (ResourceCollection resourceCollection : resourceCollections) {
+            @SuppressWarnings("unchecked")
+            Iterator<Resource> it = resourceCollection.iterator();
+            while (it.hasNext()) {
+                Resource resource = it.next();
+                if (resource.isDirectory()) {
+                    continue;
+                }
+                if (!resource.isExists()) {
+                    throw new BuildException("The resource " + resource + " doesn't exist");
+                }
+                bodies.add(new ResourceBody(resource, resource.getName(), mimeType, charset));
+            }
+        }
+        return bodies;
+    }
+
+    @Override
+    public void log(Task task, int msgLevel) {
+        int size = 0;
+        for (ResourceCollection resourceCollection : resourceCollections) {
+            size += resourceCollection.size();
+        }
+        task.log("Fileset part: name=" + getName() + " resources=" + size, msgLevel);
+    }
+}
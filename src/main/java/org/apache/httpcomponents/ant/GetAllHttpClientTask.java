@@ -0,0 +1,309 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.Mapper;
+import org.apache.tools.ant.types.Reference;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.types.ResourceCollection;
+import org.apache.tools.ant.types.resources.URLProvider;
+import org.apache.tools.ant.util.FileNameMapper;
+import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.ant.util.FlatFileNameMapper;
+
+/**
+ * Download a set of URIs into a directory, concurrently and over a shared pool of connections.
+ * <p>
+ * The name of the downloaded files is computed by the mapper from the path of the URIs. By default the path is flattened, so only the
+ * last segment is kept.
+ */
+public class GetAllHttpClientTask extends Task {
+
+    private File todir;
+
+    private int concurrency = 4;
+
+    private Integer maxPerRoute;
+
+    private Reference clientRef;
+
+    private String engine = AbstractHttpClientTask.ENGINE_SYNC;
+
+    private boolean failOnError = true;
+
+    private File urisFile;
+
+    private String uris;
+
+    private List<ResourceCollection> resources = new ArrayList<ResourceCollection>();
+
+    private Mapper mapper;
+
+    private List<HeaderNode> headers = new ArrayList<HeaderNode>();
+
+    private CredentialNode credential;
+
+    public void setTodir(File todir) {
+        this.todir = todir;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public void setMaxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    public void setClientRef(Reference clientRef) {
+        this.clientRef = clientRef;
+    }
+
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    public void setFailOnError(boolean failOnError) {
+        this.failOnError = failOnError;
+    }
+
+    /**
+     * @param urisFile
+     *            a text file listing one URI per line; empty lines and lines starting with '#' are ignored
+     */
+    public void setUrisFile(File urisFile) {
+        this.urisFile = urisFile;
+    }
+
+    /**
+     * @param uris
+     *            a list of URIs separated by commas or spaces
+     */
+    public void setUris(String uris) {
+        this.uris = uris;
+    }
+
+    public void add(ResourceCollection resource) {
+        resources.add(resource);
+    }
+
+    public Mapper createMapper() {
+        if (mapper != null) {
+            throw new BuildException("Cannot define more than one mapper");
+        }
+        mapper = new Mapper(getProject());
+        return mapper;
+    }
+
+    public void add(FileNameMapper fileNameMapper) {
+        createMapper().add(fileNameMapper);
+    }
+
+    public void add(HeaderNode header) {
+        if (header.getName() == null) {
+            throw new BuildException("Missing attribute 'name' on header");
+        }
+        if (header.getValue() == null) {
+            throw new BuildException("Missing attribute 'value' on header");
+        }
+        headers.add(header);
+    }
+
+    public void addConfiguredHeader(HeaderNode header) {
+        add(header);
+    }
+
+    public void add(CredentialNode credential) {
+        if (this.credential != null) {
+            throw new BuildException("Only one credential is allowed");
+        }
+        this.credential = credential;
+    }
+
+    public void addConfiguredCredential(CredentialNode credential) {
+        add(credential);
+    }
+
+    @Override
+    public void execute() throws BuildException {
+        if (todir == null) {
+            throw new BuildException("Missing attribute 'todir'");
+        }
+        if (todir.exists() && !todir.isDirectory()) {
+            throw new BuildException("The target " + todir + " is not a directory");
+        }
+
+        List<String> allUris = collectUris();
+        FileNameMapper fileNameMapper = mapper != null ? mapper.getImplementation() : new FlatFileNameMapper();
+
+        ParallelHttpClientTask parallel = new ParallelHttpClientTask();
+        parallel.bindToOwner(this);
+        parallel.setThreads(concurrency);
+        if (maxPerRoute != null) {
+            parallel.setMaxPerRoute(maxPerRoute);
+        }
+        if (clientRef != null) {
+            parallel.setClientRef(clientRef);
+        }
+        parallel.setEngine(engine);
+
+        List<GetHttpClientTask> gets = new ArrayList<GetHttpClientTask>();
+        List<String> getUris = new ArrayList<String>();
+        List<File> files = new ArrayList<File>();
+        Map<File, String> targets = new HashMap<File, String>();
+        for (String uri : allUris) {
+            String path;
+            try {
+                path = new URI(uri).getPath();
+            } catch (URISyntaxException e) {
+                throw new BuildException("Incorrect URI '" + uri + "'", e);
+            }
+            while (path != null && path.startsWith("/")) {
+                path = path.substring(1);
+            }
+            String[] names = path == null || path.length() == 0 ? null : fileNameMapper.mapFileName(path);
+            if (names == null || names.length == 0) {
+                log("No file name mapped for " + uri + ", skipped", Project.MSG_VERBOSE);
+                continue;
+            }
+            File file = new File(todir, names[0]);
+            // checked before any download, as the parallel downloads would otherwise overwrite each other
+            String previous = targets.put(file, uri);
+            if (previous != null) {
+                throw new BuildException("Both " + previous + " and " + uri + " are mapped to " + file
+                        + ", use a mapper keeping the directories");
+            }
+            file.getParentFile().mkdirs();
+
+            GetHttpClientTask get = new GetHttpClientTask();
+            get.bindToOwner(this);
+            get.setUri(uri);
+            get.setResponseFile(file);
+            for (HeaderNode header : headers) {
+                get.add(header);
+            }
+            if (credential != null) {
+                get.add(credential);
+            }
+            parallel.addTask(get);
+            gets.add(get);
+            getUris.add(uri);
+            files.add(file);
+        }
+
+        long start = System.currentTimeMillis();
+        BuildException failure = null;
+        try {
+            parallel.execute();
+        } catch (BuildException e) {
+            failure = e;
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        long totalBytes = 0;
+        int failed = 0;
+        for (int i = 0; i < gets.size(); i++) {
+            String uri = getUris.get(i);
+            File file = files.get(i);
+            int status = gets.get(i).getResponseStatus();
+            if (status >= 200 && status < 300) {
+                totalBytes += file.length();
+                log(uri + " -> " + file + ": " + status + " (" + file.length() + " bytes)", Project.MSG_INFO);
+            } else {
+                failed++;
+                file.delete();
+                log(uri + ": " + (status == -1 ? "failed" : Integer.toString(status)), Project.MSG_WARN);
+            }
+        }
+        log("Downloaded " + (gets.size() - failed) + " of " + gets.size() + " files, " + totalBytes + " bytes in " + elapsed + " ms ("
+                + formatThroughput(totalBytes, elapsed) + ")", Project.MSG_INFO);
+
+        if (failed > 0 && failOnError) {
+            throw new BuildException(failed + " of the " + gets.size() + " downloads failed", failure);
+        }
+    }
+
+    private List<String> collectUris() {
+        List<String> allUris = new ArrayList<String>();
+        if (uris != null) {
+            for (String uri : uris.split("[,\\s]+")) {
+                if (uri.length() != 0) {
+                    allUris.add(uri);
+                }
+            }
+        }
+        if (urisFile != null) {
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new FileReader(urisFile));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.length() != 0 && !line.startsWith("#")) {
+                        allUris.add(line);
+                    }
+                }
+            } catch (IOException e) {
+                throw new BuildException("The URIs could not be read from " + urisFile, e);
+            } finally {
+                FileUtils.close(reader);
+            }
+        }
+        for (ResourceCollection rc : resources) {
+            Iterator<?> it = rc.iterator();
+            while (it.hasNext()) {
+                Resource resource = (Resource) it.next();
+                URLProvider urlProvider = (URLProvider) resource.as(URLProvider.class);
+                if (urlProvider == null) {
+                    throw new BuildException("The resource " + resource + " is not an URL");
+                }
+                allUris.add(urlProvider.getURL().toExternalForm());
+            }
+        }
+        return allUris;
+    }
+
+    private static String formatThroughput(long bytes, long elapsed) {
+        if (elapsed <= 0) {
+            return "n/a";
+        }
+        long bytesPerSecond = bytes * 1000 / elapsed;
+        if (bytesPerSecond >= 1024 * 1024) {
+            return (bytesPerSecond * 10 / (1024 * 1024)) / 10.0 + " MB/s";
+        }
+        if (bytesPerSecond >= 1024) {
+            return (bytesPerSecond * 10 / 1024) / 10.0 + " KB/s";
+        }
+        return bytesPerSecond + " B/s";
+    }
+}
@@ -17,15 +17,591 @@
  */
 package org.apache.httpcomponents.ant;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.util.FileUtils;
 
 public class GetHttpClientTask extends AbstractHttpClientTask {
 
+    private int segments = 1;
+
+    private long minSegmentSize = 1024 * 1024;
+
+    private boolean resume;
+
+    private boolean conditional;
+
+    private String changedProperty;
+
+    private String checksum;
+
+    private String checksumUri;
+
+    private File hashCache;
+
+    private UnpackNode unpack;
+
+    private final List<HttpUriRequest> segmentRequests = new CopyOnWriteArrayList<HttpUriRequest>();
+
+    /**
+     * @param segments
+     *            the number of byte ranges downloaded at the same time into the response file, when the server supports range
+     *            requests. Only the sync engine downloads by segments, and neither with conditional nor with resume.
+     */
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * @param minSegmentSize
+     *            the minimum size in bytes of a downloaded range, so small files are downloaded in a single stream
+     */
+    public void setMinSegmentSize(long minSegmentSize) {
+        this.minSegmentSize = minSegmentSize;
+    }
+
+    /**
+     * @param resume
+     *            if <code>true</code>, the response file is downloaded into a side file which is kept if the download fails, so the
+     *            next attempt only requests the missing bytes. Only the sync engine resumes downloads, in a single stream, and not
+     *            with conditional.
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * @param conditional
+     *            if <code>true</code>, the validators of the downloaded response file are stored next to it, in
+     *            <code>&lt;responseFile&gt;.properties</code>, so the next download is only done if the content has changed. Only the
+     *            sync engine sends conditional requests.
+     */
+    public void setConditional(boolean conditional) {
+        this.conditional = conditional;
+    }
+
+    /**
+     * @param changedProperty
+     *            the property set to <code>true</code> if the response file has been written, left unset if it was up to date
+     */
+    public void setChangedProperty(String changedProperty) {
+        this.changedProperty = changedProperty;
+    }
+
+    /**
+     * @param checksum
+     *            the published digest of the content, computed with the digest algorithm of the task. An existing response file
+     *            having this digest is not downloaded again, and a downloaded one is checked against it. Only the sync engine checks
+     *            the published digest, the async one rejects the option like the other sync only ones.
+     */
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    /**
+     * @param checksumUri
+     *            the URI, absolute or relative to the downloaded one, of a small file publishing the digest of the content, like
+     *            <code>file.tar.gz.sha256</code>; its first word is read as the digest
+     */
+    public void setChecksumUri(String checksumUri) {
+        this.checksumUri = checksumUri;
+    }
+
+    /**
+     * @param hashCache
+     *            properties file keeping the digests of the local files across builds, so an unchanged file is not read again
+     */
+    public void setHashCache(File hashCache) {
+        this.hashCache = hashCache;
+    }
+
+    public void add(UnpackNode unpack) {
+        if (this.unpack != null) {
+            throw new BuildException("Only one unpack is allowed");
+        }
+        unpack.checkAttributes();
+        this.unpack = unpack;
+    }
+
+    public void addConfiguredUnpack(UnpackNode unpack) {
+        add(unpack);
+    }
+
+    @Override
+    HttpUriRequest prepareRequest(HttpContext context) {
+        if (unpack != null && (getResponseFile() != null || getResponseProperty() != null)) {
+            throw new BuildException("The response body cannot be both unpacked and written into a file or a property");
+        }
+        int modes = (conditional ? 1 : 0) + (resume ? 1 : 0) + (segments > 1 ? 1 : 0);
+        if (modes > 1) {
+            throw new BuildException("Only one of conditional, resume and segments can be set");
+        }
+        return super.prepareRequest(context);
+    }
+
     @Override
     protected HttpUriRequest buildRequest(URI u) {
         return new HttpGet(u);
     }
+
+    @Override
+    int getMaxConnections() {
+        return Math.max(1, segments);
+    }
+
+    @Override
+    void sendSync(HttpClient client, HttpUriRequest request, HttpContext context) {
+        File file = getResponseFile();
+        String published = null;
+        if (file != null && (checksum != null || checksumUri != null)) {
+            published = getPublishedChecksum(client, request, context);
+            if (file.isFile()) {
+                String digest;
+                try {
+                    digest = HashCache.digest(file, getDigestAlgorithm(), hashCache);
+                } catch (IOException e) {
+                    throw new BuildException("The digest of " + file + " could not be computed", e);
+                }
+                if (published.equalsIgnoreCase(digest)) {
+                    log(file + " matches the published checksum, not downloaded", Project.MSG_INFO);
+                    setUpToDateProperties(digest);
+                    return;
+                }
+            }
+            setPublishedDigest(published);
+        }
+        download(client, request, context);
+        if (published == null || !isSuccess(getResponseStatus())) {
+            // an error page written into the file is neither a change nor the published content
+            return;
+        }
+        if (changedProperty != null) {
+            setNewProperty(changedProperty, "true");
+        }
+        if (file.isFile()) {
+            // the download has been checked against the published digest
+            try {
+                HashCache.put(file, getDigestAlgorithm(), published, hashCache);
+            } catch (IOException e) {
+                log("The digest of " + file + " could not be cached: " + e.getMessage(), Project.MSG_WARN);
+            }
+        }
+    }
+
+    /**
+     * @return the digest of the content, as set on the task or as read from the published checksum file
+     */
+    private String getPublishedChecksum(HttpClient client, HttpUriRequest request, HttpContext context) {
+        String published = checksum;
+        if (published == null) {
+            HttpGet get = new HttpGet(request.getURI().resolve(checksumUri));
+            log("Fetching the checksum from " + get.getURI(), Project.MSG_VERBOSE);
+            HttpResponse response = executeRequest(client, get, context);
+            try {
+                if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK || response.getEntity() == null) {
+                    EntityUtils.consume(response.getEntity());
+                    throw new BuildException("The checksum could not be fetched from " + get.getURI() + ": " + response.getStatusLine());
+                }
+                published = EntityUtils.toString(response.getEntity());
+            } catch (IOException e) {
+                throw new BuildException("The checksum could not be read from " + get.getURI(), e);
+            }
+        }
+        published = published.trim().split("\\s+")[0];
+        if (!published.matches("[0-9a-fA-F]+")) {
+            throw new BuildException("Invalid checksum '" + published + "'");
+        }
+        return published;
+    }
+
+    private void download(HttpClient client, HttpUriRequest request, HttpContext context) {
+        if (conditional && getResponseFile() != null) {
+            conditionalDownload(client, request, context);
+            return;
+        }
+        if (resume && getResponseFile() != null) {
+            resumeDownload(client, request, context);
+            return;
+        }
+        if (segments > 1 && getResponseFile() != null) {
+            // the ranges are relative to the uncompressed content
+            request.removeHeaders("Accept-Encoding");
+            HttpResponse probe = probeRanges(client, request, context);
+            if (probe != null) {
+                long length = Long.parseLong(probe.getFirstHeader("Content-Length").getValue());
+                int count = (int) Math.min(segments, length / Math.max(1, minSegmentSize));
+                if (count > 1) {
+                    downloadSegments(client, request, context, probe, length, count);
+                    return;
+                }
+            }
+            log("Downloading in a single stream", Project.MSG_VERBOSE);
+        }
+        super.sendSync(client, request, context);
+    }
+
+    @Override
+    void checkAsyncEngine() {
+        super.checkAsyncEngine();
+        if (segments > 1) {
+            throw unsupportedInAsyncEngine("segments");
+        }
+        if (resume) {
+            throw unsupportedInAsyncEngine("resume");
+        }
+        if (conditional) {
+            throw unsupportedInAsyncEngine("conditional");
+        }
+        if (checksum != null || checksumUri != null) {
+            throw unsupportedInAsyncEngine("checksum");
+        }
+        // the async consumer buffers the whole body in memory, an archive is better streamed by the blocking client
+        if (unpack != null) {
+            throw unsupportedInAsyncEngine("unpack");
+        }
+    }
+
+    @Override
+    boolean writeResponseSink(HttpResponse response, HttpEntity entity) {
+        if (unpack == null) {
+            return false;
+        }
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            if (status < 200 || status >= 300) {
+                log("Response body not unpacked, the request failed", Project.MSG_VERBOSE);
+                BodyLogger.discard(response.getEntity());
+                return true;
+            }
+            unpack.log(this, Project.MSG_VERBOSE);
+            InputStream in = entity.getContent();
+            try {
+                int count = unpack.unpack(this, in);
+                // the end of the archive is read too, so the connection can be reused and the digest covers the whole body
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                while (in.read(buffer) != -1) {
+                    // skip
+                }
+                log("Unpacked " + count + " files into " + unpack.getTodir(), Project.MSG_INFO);
+            } finally {
+                FileUtils.close(in);
+            }
+        } catch (IOException e) {
+            throw new BuildException("The response could not be unpacked into " + unpack.getTodir(), e);
+        }
+        return true;
+    }
+
+    @Override
+    boolean isExpectedStatus(int status) {
+        return super.isExpectedStatus(status) || (conditional && status == HttpStatus.SC_NOT_MODIFIED);
+    }
+
+    @Override
+    void abortRequest() {
+        super.abortRequest();
+        for (HttpUriRequest segmentRequest : segmentRequests) {
+            segmentRequest.abort();
+        }
+    }
+
+    private void conditionalDownload(HttpClient client, HttpUriRequest request, HttpContext context) {
+        File file = getResponseFile();
+        DownloadMetadata metadata = new DownloadMetadata(new File(file.getPath() + ".properties"));
+        String uri = request.getURI().toString();
+        // a file modified locally or downloaded from another URI is not validated
+        boolean validated = file.exists() && uri.equals(metadata.getUri()) && file.length() == metadata.getLength();
+        if (validated) {
+            if (metadata.getETag() != null) {
+                request.setHeader("If-None-Match", metadata.getETag());
+            }
+            if (metadata.getLastModified() != null) {
+                request.setHeader("If-Modified-Since", metadata.getLastModified());
+            }
+        }
+
+        HttpResponse response = executeRequest(client, request, context);
+        int status = response.getStatusLine().getStatusCode();
+        if (validated && status == HttpStatus.SC_NOT_MODIFIED) {
+            log(file + " is up to date", Project.MSG_INFO);
+            handleResponse(response, true);
+            return;
+        }
+
+        metadata.delete();
+        handleResponse(response, false);
+        if (isSuccess(status)) {
+            if (changedProperty != null) {
+                setNewProperty(changedProperty, "true");
+            }
+            metadata.update(response);
+            if (metadata.getETag() != null || metadata.getLastModified() != null) {
+                metadata.setUri(uri);
+                metadata.setLength(file.length());
+                metadata.store();
+            } else {
+                log("The server sent neither an ETag nor a last modification date, the next download won't be conditional",
+                        Project.MSG_VERBOSE);
+            }
+        }
+    }
+
+    private void resumeDownload(HttpClient client, HttpUriRequest request, HttpContext context) {
+        File file = getResponseFile();
+        File part = new File(file.getPath() + ".part");
+        DownloadMetadata metadata = new DownloadMetadata(new File(file.getPath() + ".part.properties"));
+        // the ranges are relative to the uncompressed content
+        request.removeHeaders("Accept-Encoding");
+        long offset = 0;
+        if (part.length() > 0 && metadata.getValidator() != null) {
+            offset = part.length();
+            log("Resuming the download of " + file + " from byte " + offset, Project.MSG_INFO);
+            request.setHeader("Range", "bytes=" + offset + "-");
+            request.setHeader("If-Range", metadata.getValidator());
+        }
+
+        HttpResponse response = executeRequest(client, request, context);
+        int status = response.getStatusLine().getStatusCode();
+        HttpEntity entity = response.getEntity();
+        if (offset > 0 && status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+            try {
+                EntityUtils.consume(entity);
+            } catch (IOException e) {
+                throw buildRequestException(e);
+            }
+            log("The partial download " + part + " doesn't match the content anymore, downloading it again", Project.MSG_INFO);
+            part.delete();
+            metadata.delete();
+            request.removeHeaders("Range");
+            request.removeHeaders("If-Range");
+            resumeDownload(client, request, context);
+            return;
+        }
+
+        boolean append;
+        if (offset > 0 && status == HttpStatus.SC_PARTIAL_CONTENT) {
+            Header contentRange = response.getFirstHeader("Content-Range");
+            if (contentRange == null || !contentRange.getValue().startsWith("bytes " + offset + "-")) {
+                throw new BuildException("Unexpected range " + (contentRange != null ? contentRange.getValue() : "") + " received for '"
+                        + request.getURI() + "', expecting it to start at " + offset);
+            }
+            append = true;
+        } else if (status == HttpStatus.SC_OK) {
+            if (offset > 0) {
+                log("The content changed on the server, downloading it again", Project.MSG_INFO);
+            }
+            append = false;
+        } else {
+            handleResponse(response, false);
+            return;
+        }
+        if (entity == null) {
+            handleResponse(response, false);
+            return;
+        }
+
+        if (!append) {
+            metadata.update(response);
+            if (metadata.getValidator() != null) {
+                metadata.store();
+            } else {
+                log("The server sent neither an ETag nor a last modification date, a failed download won't be resumed",
+                        Project.MSG_VERBOSE);
+                metadata.delete();
+            }
+        }
+        writeResponseFile(entity, part, append);
+        file.delete();
+        if (!part.renameTo(file)) {
+            throw new BuildException("The downloaded file " + part + " could not be moved to " + file);
+        }
+        metadata.delete();
+        if (append) {
+            // the file is now complete, so the task reports it as a full response
+            response.setStatusLine(response.getProtocolVersion(), HttpStatus.SC_OK, "OK");
+        }
+        handleResponse(response, true);
+    }
+
+    /**
+     * @return the response to a HEAD request if the server accepts byte ranges and announces the length of the content, otherwise
+     *         <code>null</code>
+     */
+    private HttpResponse probeRanges(HttpClient client, HttpUriRequest request, HttpContext context) {
+        HttpHead head = new HttpHead(request.getURI());
+        head.setHeaders(request.getAllHeaders());
+        HttpResponse response = executeRequest(client, head, context);
+        try {
+            EntityUtils.consume(response.getEntity());
+        } catch (IOException e) {
+            throw buildRequestException(e);
+        }
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+            return null;
+        }
+        Header acceptRanges = response.getFirstHeader("Accept-Ranges");
+        if (acceptRanges == null || !acceptRanges.getValue().contains("bytes")) {
+            log("The server doesn't accept byte ranges", Project.MSG_VERBOSE);
+            return null;
+        }
+        Header contentLength = response.getFirstHeader("Content-Length");
+        if (contentLength == null || !contentLength.getValue().matches("\\d+")) {
+            log("The server doesn't announce the length of the content", Project.MSG_VERBOSE);
+            return null;
+        }
+        return response;
+    }
+
+    private void downloadSegments(final HttpClient client, final HttpUriRequest request, final HttpContext context,
+            HttpResponse probe, long length, int count) {
+        final String validator = getValidator(probe);
+        File file = getResponseFile();
+        log("Downloading " + length + " bytes in " + count + " segments", Project.MSG_VERBOSE);
+
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+        } catch (IOException e) {
+            throw new BuildException("The response file '" + file + "' could not be created", e);
+        }
+        final FileChannel channel = raf.getChannel();
+        ExecutorService executor = Executors.newFixedThreadPool(count, new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, getTaskName() + "-segment-" + index.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        boolean completed = false;
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            long segmentSize = length / count;
+            for (int i = 0; i < count; i++) {
+                final long start = i * segmentSize;
+                final long end = i == count - 1 ? length - 1 : start + segmentSize - 1;
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        // the segments share the credentials of the task but not the state of their connection
+                        downloadSegment(client, request, new BasicHttpContext(context), validator, channel, start, end);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    abortRequest();
+                    throw buildRequestException(e.getCause());
+                } catch (InterruptedException e) {
+                    abortRequest();
+                    throw new BuildException("Interrupted while downloading '" + request.getURI() + "'", e);
+                }
+            }
+            completed = true;
+        } finally {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                raf.close();
+            } catch (IOException e) {
+                log("The response file '" + file + "' could not be closed: " + e.getMessage(), Project.MSG_WARN);
+            }
+            if (!completed) {
+                file.delete();
+            }
+        }
+
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContentLength(length);
+        probe.setEntity(entity);
+        handleResponse(probe, true);
+    }
+
+    private void downloadSegment(HttpClient client, HttpUriRequest request, HttpContext context, String validator,
+            FileChannel channel, long start, long end) throws IOException {
+        HttpGet get = new HttpGet(request.getURI());
+        get.setHeaders(request.getAllHeaders());
+        get.setHeader("Range", "bytes=" + start + "-" + end);
+        if (validator != null) {
+            get.setHeader("If-Range", validator);
+        }
+        segmentRequests.add(get);
+        boolean consumed = false;
+        try {
+            // retried and bounded by the deadline like the request of the task
+            HttpResponse response = executeRequest(client, get, context);
+            HttpEntity entity = response.getEntity();
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT || entity == null) {
+                throw new BuildException("The bytes " + start + "-" + end + " of '" + request.getURI() + "' could not be downloaded: "
+                        + response.getStatusLine());
+            }
+            // a longer body would overwrite the next segment, so it is stopped at the end of the range
+            long length = copy(entity.getContent(), channel, start, end - start + 1);
+            if (length > end - start + 1) {
+                throw new BuildException("Received more than " + (end - start + 1) + " bytes for the range " + start + "-" + end + " of '"
+                        + request.getURI() + "'");
+            }
+            if (length != end - start + 1) {
+                throw new BuildException("Received " + length + " bytes instead of " + (end - start + 1) + " for the range " + start + "-"
+                        + end + " of '" + request.getURI() + "'");
+            }
+            consumed = true;
+        } finally {
+            segmentRequests.remove(get);
+            if (!consumed) {
+                get.abort();
+            }
+        }
+    }
+
+    private static boolean isSuccess(int status) {
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * @return the value of the If-Range header ensuring every range comes from the same version of the content
+     */
+    private static String getValidator(HttpResponse response) {
+        Header etag = response.getFirstHeader("ETag");
+        Header lastModified = response.getFirstHeader("Last-Modified");
+        return DownloadMetadata.getValidator(etag != null ? etag.getValue() : null, lastModified != null ? lastModified.getValue() : null);
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Digests of local files, keyed by their path, size and modification time, so an unchanged file is not read again. The digests are
+ * kept for the life of the JVM, and optionally in a properties file shared across builds.
+ */
+class HashCache {
+
+    private static final Map<String, String> MEMORY = new HashMap<String, String>();
+
+    private HashCache() {
+        // static only
+    }
+
+    /**
+     * @param cacheFile
+     *            the properties file storing the digests across builds, or <code>null</code>
+     * @return the hexadecimal digest of the file, read only if it is not already known
+     */
+    static synchronized String digest(File file, String algorithm, File cacheFile) throws IOException {
+        String key = getKey(file, algorithm);
+        String stamp = getStamp(file);
+        String value = MEMORY.get(key);
+        if (value == null && cacheFile != null) {
+            value = load(cacheFile).getProperty(key);
+        }
+        if (value != null && value.startsWith(stamp)) {
+            return value.substring(stamp.length());
+        }
+        String digest = DigestEntity.digest(file, algorithm);
+        put(file, algorithm, digest, cacheFile);
+        return digest;
+    }
+
+    /**
+     * Record the digest of a file, as computed while it was written
+     */
+    static synchronized void put(File file, String algorithm, String digest, File cacheFile) throws IOException {
+        String key = getKey(file, algorithm);
+        String value = getStamp(file) + digest.toLowerCase(Locale.ENGLISH);
+        MEMORY.put(key, value);
+        if (cacheFile != null) {
+            Properties properties = load(cacheFile);
+            properties.setProperty(key, value);
+            File tmp = new File(cacheFile.getPath() + ".tmp");
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                properties.store(out, "Digests of downloaded files");
+            } finally {
+                FileUtils.close(out);
+            }
+            cacheFile.delete();
+            if (!tmp.renameTo(cacheFile)) {
+                tmp.delete();
+                throw new IOException("The hash cache " + cacheFile + " could not be written");
+            }
+        }
+    }
+
+    private static String getKey(File file, String algorithm) throws IOException {
+        return algorithm.toUpperCase(Locale.ENGLISH) + ":" + file.getCanonicalPath();
+    }
+
+    private static String getStamp(File file) {
+        return file.length() + ":" + file.lastModified() + ":";
+    }
+
+    private static Properties load(File cacheFile) {
+        Properties properties = new Properties();
+        if (cacheFile.exists()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(cacheFile);
+                properties.load(in);
+            } catch (IOException e) {
+                // an unreadable cache is just empty
+                properties.clear();
+            } finally {
+                FileUtils.close(in);
+            }
+        }
+        return properties;
+    }
+}
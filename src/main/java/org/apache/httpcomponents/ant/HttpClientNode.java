@@ -0,0 +1,372 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.nio.client.DefaultHttpAsyncClient;
+import org.apache.http.impl.nio.conn.AsyncSchemeRegistryFactory;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.conn.scheme.AsyncScheme;
+import org.apache.http.nio.conn.scheme.AsyncSchemeRegistry;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.DataType;
+
+/**
+ * An HTTP client shared by every task referencing it via its 'clientref' attribute. The connections are pooled so the keep-alive
+ * connections are reused across tasks. The pool is shut down once, when the build finishes.
+ * <p>
+ * The tasks using the async engine share a non-blocking client, with its own pool of connections but the same limits.
+ */
+public class HttpClientNode extends DataType {
+
+    private Integer maxTotal;
+
+    private Integer maxPerRoute;
+
+    private long idleTimeout = 60000;
+
+    private Integer ioThreads;
+
+    private SSLNode ssl;
+
+    private File cacheDir;
+
+    private long cacheMaxSize = 100 * 1024 * 1024;
+
+    private long cacheMaxObjectSize = 1024 * 1024;
+
+    private Integer connectTimeout;
+
+    private Integer socketTimeout;
+
+    private Long poolTimeout;
+
+    private Long deadline;
+
+    private HttpClient client;
+
+    private DefaultHttpAsyncClient asyncClient;
+
+    private Thread idleConnectionEvictor;
+
+    private Project listenedProject;
+
+    private ShutdownListener shutdownListener;
+
+    public void setMaxTotal(int maxTotal) {
+        checkAttributesAllowed();
+        this.maxTotal = maxTotal;
+    }
+
+    public void setMaxPerRoute(int maxPerRoute) {
+        checkAttributesAllowed();
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    /**
+     * @param idleTimeout
+     *            time in milliseconds after which an unused connection is closed; 0 or less disables the eviction
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        checkAttributesAllowed();
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @param ioThreads
+     *            number of I/O dispatch threads of the async engine; defaults to the number of CPUs
+     */
+    public void setIoThreads(int ioThreads) {
+        checkAttributesAllowed();
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     * @param cacheDir
+     *            directory of an HTTP cache kept across builds, in front of the blocking client; the responses are cached as allowed by
+     *            their Cache-Control, Expires and Vary headers
+     */
+    public void setCacheDir(File cacheDir) {
+        checkAttributesAllowed();
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @param cacheMaxSize
+     *            maximum size in bytes of the cache directory, the least recently used entries being evicted first
+     */
+    public void setCacheMaxSize(long cacheMaxSize) {
+        checkAttributesAllowed();
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    /**
+     * @param cacheMaxObjectSize
+     *            maximum size in bytes of a cached response body
+     */
+    public void setCacheMaxObjectSize(long cacheMaxObjectSize) {
+        checkAttributesAllowed();
+        this.cacheMaxObjectSize = cacheMaxObjectSize;
+    }
+
+    /**
+     * @param connectTimeout
+     *            time in milliseconds to wait for a connection to be established
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        checkAttributesAllowed();
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @param socketTimeout
+     *            maximum time in milliseconds without receiving any data
+     */
+    public void setSocketTimeout(int socketTimeout) {
+        checkAttributesAllowed();
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+     * @param poolTimeout
+     *            time in milliseconds to wait for a free connection of the pool
+     */
+    public void setPoolTimeout(long poolTimeout) {
+        checkAttributesAllowed();
+        this.poolTimeout = poolTimeout;
+    }
+
+    /**
+     * @param deadline
+     *            maximum time in milliseconds for the whole exchange of a task, unless the task sets its own
+     */
+    public void setDeadline(long deadline) {
+        checkAttributesAllowed();
+        this.deadline = deadline;
+    }
+
+    Long getDeadline() {
+        if (isReference()) {
+            return getRef().getDeadline();
+        }
+        return deadline;
+    }
+
+    public void add(SSLNode ssl) {
+        checkChildrenAllowed();
+        if (this.ssl != null) {
+            throw new BuildException("Only one ssl setup is allowed");
+        }
+        ssl.checkAttributes();
+        this.ssl = ssl;
+    }
+
+    public void addConfiguredSSL(SSLNode ssl) {
+        add(ssl);
+    }
+
+    public synchronized HttpClient getClient(Task task) {
+        if (isReference()) {
+            return getRef().getClient(task);
+        }
+        if (client == null) {
+            checkLimits();
+            SchemeRegistry schemeRegistry = SchemeRegistryFactory.createDefault();
+            if (ssl != null) {
+                task.log("Registring SSL factory on the shared client", Project.MSG_VERBOSE);
+                schemeRegistry.register(new Scheme("https", 443, ssl.buildSSLSocketFactory(task)));
+            }
+            PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(schemeRegistry);
+            if (maxTotal != null) {
+                connectionManager.setMaxTotal(maxTotal);
+            }
+            if (maxPerRoute != null) {
+                connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+            }
+            client = new DefaultHttpClient(connectionManager);
+            AbstractHttpClientTask.setTimeouts(client.getParams(), connectTimeout, socketTimeout, poolTimeout);
+            if (cacheDir != null) {
+                CacheConfig cacheConfig = new CacheConfig();
+                // the cache is private to the build, so it may keep the responses to authenticated requests
+                cacheConfig.setSharedCache(false);
+                cacheConfig.setMaxObjectSize(cacheMaxObjectSize);
+                client = new CachingHttpClient(client, new FileCacheStorage(cacheDir, cacheMaxSize), cacheConfig);
+                task.log("HTTP cache enabled in " + cacheDir, Project.MSG_VERBOSE);
+            }
+            started(task);
+            task.log("Shared HTTP client created", Project.MSG_VERBOSE);
+        }
+        return client;
+    }
+
+    public synchronized HttpAsyncClient getAsyncClient(Task task) {
+        if (isReference()) {
+            return getRef().getAsyncClient(task);
+        }
+        if (asyncClient == null) {
+            checkLimits();
+            if (ioThreads != null && ioThreads < 1) {
+                throw new BuildException("The attribute 'ioThreads' must be strictly positive");
+            }
+            AsyncSchemeRegistry schemeRegistry = AsyncSchemeRegistryFactory.createDefault();
+            if (ssl != null) {
+                task.log("Registring SSL layering strategy on the shared async client", Project.MSG_VERBOSE);
+                schemeRegistry.register(new AsyncScheme("https", 443, ssl.buildSSLLayeringStrategy(task)));
+            }
+            IOReactorConfig config = new IOReactorConfig();
+            if (ioThreads != null) {
+                config.setIoThreadCount(ioThreads);
+            }
+            PoolingClientAsyncConnectionManager connectionManager;
+            try {
+                connectionManager = new PoolingClientAsyncConnectionManager(new DefaultConnectingIOReactor(config), schemeRegistry);
+            } catch (IOReactorException e) {
+                throw new BuildException("The I/O reactor of the async client could not be created", e);
+            }
+            if (maxTotal != null) {
+                connectionManager.setMaxTotal(maxTotal);
+            }
+            if (maxPerRoute != null) {
+                connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+            }
+            asyncClient = new DefaultHttpAsyncClient(connectionManager);
+            AbstractHttpClientTask.setTimeouts(asyncClient.getParams(), connectTimeout, socketTimeout, poolTimeout);
+            asyncClient.start();
+            started(task);
+            task.log("Shared async HTTP client created", Project.MSG_VERBOSE);
+        }
+        return asyncClient;
+    }
+
+    private void checkLimits() {
+        AbstractHttpClientTask.checkTimeouts(connectTimeout, socketTimeout, poolTimeout, deadline);
+        if (maxTotal != null && maxTotal < 1) {
+            throw new BuildException("The attribute 'maxTotal' must be strictly positive");
+        }
+        if (maxPerRoute != null && maxPerRoute < 1) {
+            throw new BuildException("The attribute 'maxPerRoute' must be strictly positive");
+        }
+    }
+
+    private void started(Task task) {
+        if (idleTimeout > 0 && idleConnectionEvictor == null) {
+            idleConnectionEvictor = new IdleConnectionEvictor(this, idleTimeout);
+            idleConnectionEvictor.start();
+        }
+        if (shutdownListener == null) {
+            listenedProject = getProject() != null ? getProject() : task.getProject();
+            shutdownListener = new ShutdownListener();
+            listenedProject.addBuildListener(shutdownListener);
+        }
+    }
+
+    private synchronized void closeIdleConnections() {
+        if (client != null) {
+            client.getConnectionManager().closeExpiredConnections();
+            client.getConnectionManager().closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+        }
+        if (asyncClient != null) {
+            PoolingClientAsyncConnectionManager connectionManager = (PoolingClientAsyncConnectionManager) asyncClient.getConnectionManager();
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void shutdown() {
+        if (idleConnectionEvictor != null) {
+            idleConnectionEvictor.interrupt();
+            idleConnectionEvictor = null;
+        }
+        if (client != null) {
+            if (client instanceof CachingHttpClient) {
+                CachingHttpClient cachingClient = (CachingHttpClient) client;
+                log("HTTP cache " + cacheDir + ": " + cachingClient.getCacheHits() + " hits, " + cachingClient.getCacheMisses()
+                        + " misses, " + cachingClient.getCacheUpdates() + " revalidations", Project.MSG_INFO);
+            }
+            client.getConnectionManager().shutdown();
+            client = null;
+        }
+        if (asyncClient != null) {
+            try {
+                asyncClient.shutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            asyncClient = null;
+        }
+        if (shutdownListener != null) {
+            listenedProject.removeBuildListener(shutdownListener);
+            shutdownListener = null;
+            listenedProject = null;
+        }
+    }
+
+    private HttpClientNode getRef() {
+        return (HttpClientNode) getCheckedRef(HttpClientNode.class, getDataTypeName());
+    }
+
+    private static class IdleConnectionEvictor extends Thread {
+
+        private final HttpClientNode clientNode;
+
+        private final long idleTimeout;
+
+        IdleConnectionEvictor(HttpClientNode clientNode, long idleTimeout) {
+            super("httpclient-idle-connection-evictor");
+            this.clientNode = clientNode;
+            this.idleTimeout = idleTimeout;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isInterrupted()) {
+                    Thread.sleep(Math.min(idleTimeout, 5000));
+                    clientNode.closeIdleConnections();
+                }
+            } catch (InterruptedException e) {
+                // shutdown
+            }
+        }
+    }
+
+    private class ShutdownListener extends BuildFinishedListener {
+
+        public void buildFinished(BuildEvent event) {
+            shutdown();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal JSON reading, enough for the flat objects returned by the token endpoints
+ */
+final class Json {
+
+    private Json() {
+        // static methods only
+    }
+
+    /**
+     * Parse the members of a JSON object, the values of the nested objects and arrays being left unparsed
+     */
+    static Map<String, String> parseObject(String json) {
+        Map<String, String> members = new HashMap<String, String>();
+        int[] pos = new int[] { skipSpaces(json, 0) };
+        expect(json, pos, '{');
+        if (peek(json, pos) == '}') {
+            return members;
+        }
+        while (true) {
+            String name = parseString(json, pos);
+            expect(json, pos, ':');
+            pos[0] = skipSpaces(json, pos[0]);
+            String value;
+            char c = peek(json, pos);
+            if (c == '"') {
+                value = parseString(json, pos);
+            } else {
+                int start = pos[0];
+                skipValue(json, pos);
+                value = json.substring(start, pos[0]).trim();
+            }
+            members.put(name, value);
+            pos[0] = skipSpaces(json, pos[0]);
+            if (peek(json, pos) == ',') {
+                pos[0]++;
+                continue;
+            }
+            expect(json, pos, '}');
+            return members;
+        }
+    }
+
+    private static String parseString(String json, int[] pos) {
+        expect(json, pos, '"');
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            if (pos[0] >= json.length()) {
+                throw new IllegalArgumentException("unterminated string");
+            }
+            char c = json.charAt(pos[0]++);
+            if (c == '"') {
+                return builder.toString();
+            }
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (pos[0] >= json.length()) {
+                throw new IllegalArgumentException("unterminated string");
+            }
+            c = json.charAt(pos[0]++);
+            switch (c) {
+            case 'b':
+                builder.append('\b');
+                break;
+            case 'f':
+                builder.append('\f');
+                break;
+            case 'n':
+                builder.append('\n');
+                break;
+            case 'r':
+                builder.append('\r');
+                break;
+            case 't':
+                builder.append('\t');
+                break;
+            case 'u':
+                if (pos[0] + 4 > json.length()) {
+                    throw new IllegalArgumentException("invalid unicode escape");
+                }
+                try {
+                    builder.append((char) Integer.parseInt(json.substring(pos[0], pos[0] + 4), 16));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("invalid unicode escape");
+                }
+                pos[0] += 4;
+                break;
+            default:
+                // \" \\ \/
+                builder.append(c);
+            }
+        }
+    }
+
+    /**
+     * Skip a number, a literal, or a nested object or array
+     */
+    private static void skipValue(String json, int[] pos) {
+        int depth = 0;
+        while (pos[0] < json.length()) {
+            char c = json.charAt(pos[0]);
+            if (c == '"') {
+                parseString(json, pos);
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (depth == 0) {
+                    return;
+                }
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                return;
+            }
+            pos[0]++;
+        }
+    }
+
+    private static int skipSpaces(String json, int pos) {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static char peek(String json, int[] pos) {
+        pos[0] = skipSpaces(json, pos[0]);
+        if (pos[0] >= json.length()) {
+            throw new IllegalArgumentException("unexpected end");
+        }
+        return json.charAt(pos[0]);
+    }
+
+    private static void expect(String json, int[] pos, char expected) {
+        if (peek(json, pos) != expected) {
+            throw new IllegalArgumentException("'" + expected + "' expected at " + pos[0]);
+        }
+        pos[0]++;
+    }
+}
@@ -17,14 +17,18 @@
  */
 package org.apache.httpcomponents.ant;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.http.entity.mime.FormBodyPart;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntity;
+import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Task;
 
@@ -62,6 +66,10 @@ public class MultipartEntityNode extends EntityNode {
         add(part);
     }
 
+    public void addConfiguredFileSetPart(FileSetPartNode part) {
+        add(part);
+    }
+
     @Override
     public MultipartEntity buildHttpEntity() {
         HttpMultipartMode m = HttpMultipartMode.STRICT;
@@ -82,9 +90,27 @@ public class MultipartEntityNode extends EntityNode {
                 throw new BuildException("Unsupported charset " + charset);
             }
         }
-        MultipartEntity entity = new MultipartEntity(m, boundary, c);
+        MultipartEntity entity = new MultipartEntity(m, boundary, c) {
+            // the body is only written by writeTo, the async engine reads it through a pipe
+            @Override
+            public InputStream getContent() throws IOException {
+                return new EntityPipeInputStream(this);
+            }
+        };
         for (PartNode part : parts) {
-            entity.addPart(part.getName(), part.buildContentBoby());
+            String compress = part.getCompress();
+            if (compress != null) {
+                CompressingEntity.checkCompression(compress);
+            }
+            for (ContentBody body : part.buildContentBodies()) {
+                if (compress != null) {
+                    FormBodyPart formPart = new FormBodyPart(part.getName(), new CompressedContentBody(body, compress));
+                    formPart.addField("Content-Encoding", compress);
+                    entity.addPart(formPart);
+                } else {
+                    entity.addPart(part.getName(), body);
+                }
+            }
         }
         return entity;
     }
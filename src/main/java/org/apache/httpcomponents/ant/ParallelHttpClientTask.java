@@ -0,0 +1,448 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.TaskContainer;
+import org.apache.tools.ant.UnknownElement;
+import org.apache.tools.ant.types.Reference;
+
+/**
+ * Run the nested http tasks concurrently, over a shared pool of connections.
+ * <p>
+ * With the async engine the nested tasks are not performed as regular tasks: their requests are all sent at once through a
+ * non-blocking client, and the responses are handled in the thread of this container. The options needing the tasks to drive their
+ * own exchange, like retries, deadlines or segmented downloads, are then rejected.
+ * <p>
+ * The properties set by the nested tasks are only set once every task has ended, in the order the tasks are declared, so the
+ * result doesn't depend on the order in which the responses are received.
+ */
+public class ParallelHttpClientTask extends Task implements TaskContainer {
+
+    private int threads = 4;
+
+    private Integer maxPerRoute;
+
+    private boolean virtualThreads;
+
+    private boolean failFast;
+
+    private Reference clientRef;
+
+    private String engine = AbstractHttpClientTask.ENGINE_SYNC;
+
+    private List<Task> nestedTasks = new ArrayList<Task>();
+
+    /**
+     * @param threads
+     *            the number of tasks run at the same time, which is also the total number of connections of the pool
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param maxPerRoute
+     *            the maximum number of concurrent connections to a single host; defaults to the number of threads
+     */
+    public void setMaxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @param failFast
+     *            if <code>true</code>, the first failing task aborts the other ones, otherwise every task is run and the failures are
+     *            reported at the end
+     */
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    public void setClientRef(Reference clientRef) {
+        this.clientRef = clientRef;
+    }
+
+    /**
+     * @param engine
+     *            'sync' to run each task in its own thread, or 'async' to send every request at once through a non-blocking client, in
+     *            which case the number of requests in flight is only bounded by the size of the connection pool
+     */
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    public void addTask(Task task) {
+        nestedTasks.add(task);
+    }
+
+    @Override
+    public void execute() throws BuildException {
+        if (threads < 1) {
+            throw new BuildException("The attribute 'threads' must be strictly positive");
+        }
+        boolean async = AbstractHttpClientTask.ENGINE_ASYNC.equals(engine);
+        if (!async && !AbstractHttpClientTask.ENGINE_SYNC.equals(engine)) {
+            throw new BuildException("Unsupported engine " + engine);
+        }
+        if (maxPerRoute != null && clientRef != null) {
+            throw new BuildException("The attribute 'maxPerRoute' should be set on the referenced httpclient when 'clientref' is set");
+        }
+
+        List<AbstractHttpClientTask> httpTasks = new ArrayList<AbstractHttpClientTask>();
+        for (Task task : nestedTasks) {
+            httpTasks.add(getHttpTask(task));
+        }
+
+        HttpClientNode client;
+        boolean ownClient = clientRef == null;
+        if (ownClient) {
+            client = new HttpClientNode();
+            client.setProject(getProject());
+            client.setMaxTotal(threads);
+            client.setMaxPerRoute(maxPerRoute != null ? maxPerRoute : threads);
+        } else {
+            Object node = clientRef.getReferencedObject(getProject());
+            if (!(node instanceof HttpClientNode)) {
+                throw new BuildException("The reference '" + clientRef.getRefId() + "' is not an httpclient");
+            }
+            client = (HttpClientNode) node;
+        }
+        for (AbstractHttpClientTask httpTask : httpTasks) {
+            if (!httpTask.isClientConfigured()) {
+                httpTask.setDefaultClient(client);
+            }
+            httpTask.resetAbort();
+            httpTask.bufferProperties();
+        }
+
+        List<Throwable> failures = new ArrayList<Throwable>();
+        Set<AbstractHttpClientTask> completed = new HashSet<AbstractHttpClientTask>();
+        try {
+            if (async) {
+                executeAsync(httpTasks, failures, completed);
+            } else {
+                executeSync(httpTasks, failures, completed);
+            }
+        } finally {
+            if (ownClient) {
+                client.shutdown();
+            }
+            // the tasks cancelled or aborted don't publish what they have set before being stopped
+            synchronized (completed) {
+                for (AbstractHttpClientTask httpTask : httpTasks) {
+                    if (completed.contains(httpTask)) {
+                        httpTask.flushProperties();
+                    } else {
+                        httpTask.discardProperties();
+                    }
+                }
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            for (Throwable failure : failures) {
+                log(failure.getMessage(), Project.MSG_ERR);
+            }
+            Throwable first = failures.get(0);
+            if (failures.size() == 1 && first instanceof BuildException) {
+                throw (BuildException) first;
+            }
+            throw new BuildException(failures.size() + " of the " + nestedTasks.size() + " http tasks failed, the first failure being: "
+                    + first.getMessage(), first);
+        }
+    }
+
+    private void executeSync(final List<AbstractHttpClientTask> httpTasks, List<Throwable> failures,
+            final Set<AbstractHttpClientTask> completed) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, buildThreadFactory());
+        try {
+            CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executor);
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < nestedTasks.size(); i++) {
+                final Task task = nestedTasks.get(i);
+                final AbstractHttpClientTask httpTask = httpTasks.get(i);
+                futures.add(completionService.submit(new Callable<Void>() {
+                    public Void call() {
+                        boolean failed = true;
+                        try {
+                            task.perform();
+                            failed = false;
+                        } finally {
+                            markCompleted(httpTask, completed);
+                            if (failed && failFast) {
+                                // right away, so that no other task is started by this thread in the meantime
+                                abort(httpTasks, completed);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    completionService.take().get();
+                } catch (InterruptedException e) {
+                    failures.add(e);
+                    abort(futures, httpTasks, completed);
+                    break;
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause());
+                    if (failFast) {
+                        abort(futures, httpTasks, completed);
+                        break;
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Send every request at once, and handle the responses in this thread as they are received
+     */
+    private void executeAsync(List<AbstractHttpClientTask> httpTasks, List<Throwable> failures, Set<AbstractHttpClientTask> completed) {
+        // nothing is sent if a task cannot be run by this engine
+        for (AbstractHttpClientTask httpTask : httpTasks) {
+            if (httpTask.hasSSL() && httpTask.getSharedClientNode() == null) {
+                throw new BuildException("The ssl setup of a task run by the async engine should be declared on a referenced httpclient");
+            }
+            httpTask.checkAsyncBatch();
+        }
+        final BlockingQueue<AsyncResult> results = new LinkedBlockingQueue<AsyncResult>();
+        List<Future<HttpResponse>> futures = new ArrayList<Future<HttpResponse>>();
+        List<Task> running = new ArrayList<Task>();
+        for (int i = 0; i < httpTasks.size(); i++) {
+            final Task task = nestedTasks.get(i);
+            final AbstractHttpClientTask httpTask = httpTasks.get(i);
+            fireTaskStarted(task);
+            running.add(task);
+            try {
+                HttpContext context = new BasicHttpContext();
+                HttpUriRequest request = httpTask.prepareRequest(context);
+                HttpAsyncClient client = httpTask.getSharedClientNode().getAsyncClient(httpTask);
+                futures.add(httpTask.sendAsync(client, request, context, new FutureCallback<HttpResponse>() {
+                    public void completed(HttpResponse response) {
+                        results.add(new AsyncResult(task, httpTask, response, null));
+                    }
+
+                    public void failed(Exception ex) {
+                        results.add(new AsyncResult(task, httpTask, null, ex));
+                    }
+
+                    public void cancelled() {
+                        results.add(new AsyncResult(task, httpTask, null, new CancellationException()));
+                    }
+                }));
+            } catch (BuildException e) {
+                failures.add(e);
+                markCompleted(httpTask, completed);
+                running.remove(task);
+                fireTaskFinished(task, e);
+                if (failFast) {
+                    // the requests already sent are stopped, like the threads of the sync engine
+                    cancel(futures);
+                    futures.clear();
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            AsyncResult result;
+            try {
+                result = results.take();
+            } catch (InterruptedException e) {
+                failures.add(e);
+                cancel(futures);
+                break;
+            }
+            try {
+                if (result.failure != null) {
+                    throw result.httpTask.buildRequestException(result.failure);
+                }
+                result.httpTask.handleAsyncResponse(result.response);
+                markCompleted(result.httpTask, completed);
+                running.remove(result.task);
+                fireTaskFinished(result.task, null);
+            } catch (BuildException e) {
+                markCompleted(result.httpTask, completed);
+                running.remove(result.task);
+                fireTaskFinished(result.task, e);
+                failures.add(e);
+                if (failFast) {
+                    cancel(futures);
+                    break;
+                }
+            }
+        }
+        for (Task task : running) {
+            fireTaskFinished(task, new BuildException("Cancelled"));
+        }
+    }
+
+    private static class AsyncResult {
+
+        final Task task;
+
+        final AbstractHttpClientTask httpTask;
+
+        final HttpResponse response;
+
+        final Exception failure;
+
+        AsyncResult(Task task, AbstractHttpClientTask httpTask, HttpResponse response, Exception failure) {
+            this.task = task;
+            this.httpTask = httpTask;
+            this.response = response;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * The tasks run by the async engine are not performed, their events are fired as their request is sent and their response
+     * handled
+     */
+    private void fireTaskStarted(Task task) {
+        BuildEvent event = new BuildEvent(task);
+        for (Object listener : getProject().getBuildListeners()) {
+            ((BuildListener) listener).taskStarted(event);
+        }
+    }
+
+    private void fireTaskFinished(Task task, Throwable failure) {
+        BuildEvent event = new BuildEvent(task);
+        event.setException(failure);
+        for (Object listener : getProject().getBuildListeners()) {
+            ((BuildListener) listener).taskFinished(event);
+        }
+    }
+
+    private void cancel(List<Future<HttpResponse>> futures) {
+        for (Future<HttpResponse> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private AbstractHttpClientTask getHttpTask(Task task) {
+        Object realThing = task;
+        if (task instanceof UnknownElement) {
+            UnknownElement ue = (UnknownElement) task;
+            ue.maybeConfigure();
+            realThing = ue.getRealThing();
+        }
+        if (!(realThing instanceof AbstractHttpClientTask)) {
+            throw new BuildException("Only http tasks are supported in " + getTaskName() + ", found " + task.getTaskName());
+        }
+        return (AbstractHttpClientTask) realThing;
+    }
+
+    private static void markCompleted(AbstractHttpClientTask httpTask, Set<AbstractHttpClientTask> completed) {
+        synchronized (completed) {
+            if (!httpTask.isAborted()) {
+                completed.add(httpTask);
+            }
+        }
+    }
+
+    /**
+     * Abort the tasks which have not completed yet, the ones not started included
+     */
+    private static void abort(List<AbstractHttpClientTask> httpTasks, Set<AbstractHttpClientTask> completed) {
+        synchronized (completed) {
+            for (AbstractHttpClientTask httpTask : httpTasks) {
+                if (!completed.contains(httpTask)) {
+                    httpTask.abort();
+                }
+            }
+        }
+    }
+
+    private static void abort(List<Future<Void>> futures, List<AbstractHttpClientTask> httpTasks, Set<AbstractHttpClientTask> completed) {
+        abort(httpTasks, completed);
+        for (Future<Void> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private ThreadFactory buildThreadFactory() {
+        if (virtualThreads) {
+            // virtual threads are looked up by reflection so the tasks still run on older JVMs
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, getTaskName() + "-", 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (ClassNotFoundException e) {
+                throw new BuildException("Virtual threads are not supported by this JVM", e);
+            } catch (NoSuchMethodException e) {
+                throw new BuildException("Virtual threads are not supported by this JVM", e);
+            } catch (IllegalAccessException e) {
+                throw new BuildException("Virtual threads could not be created", e);
+            } catch (InvocationTargetException e) {
+                throw new BuildException("Virtual threads could not be created", e.getCause());
+            }
+        }
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, getTaskName() + "-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
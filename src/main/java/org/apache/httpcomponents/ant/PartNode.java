@@ -17,6 +17,9 @@
  */
 package org.apache.httpcomponents.ant;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.tools.ant.Task;
 
@@ -26,6 +29,8 @@ public abstract class PartNode {
 
     private String mimeType;
 
+    private String compress;
+
     public void setName(String name) {
         this.name = name;
     }
@@ -42,8 +47,26 @@ public abstract class PartNode {
         return mimeType;
     }
 
+    /**
+     * Compress the part with <code>gzip</code> or <code>deflate</code> while it is sent
+     */
+    public void setCompress(String compress) {
+        this.compress = compress;
+    }
+
+    public String getCompress() {
+        return compress;
+    }
+
     public abstract ContentBody buildContentBoby();
 
+    /**
+     * @return the bodies of the parts added by this node, all sharing its name
+     */
+    public List<ContentBody> buildContentBodies() {
+        return Collections.singletonList(buildContentBoby());
+    }
+
     public abstract void log(Task task, int msgLevel);
 
 }
@@ -0,0 +1,46 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Files holding secrets, readable and writable by their owner only
+ */
+final class PrivateFile {
+
+    private PrivateFile() {
+        // static methods only
+    }
+
+    /**
+     * Create the file, empty, with its permissions restricted before anything is written into it
+     */
+    static void create(File file) throws IOException {
+        file.delete();
+        if (!file.createNewFile() || !restrictToOwner(file)) {
+            throw new IOException("the permissions of " + file + " could not be restricted");
+        }
+    }
+
+    static boolean restrictToOwner(File file) {
+        return file.setReadable(false, false) && file.setReadable(true, true) && file.setWritable(false, false)
+                && file.setWritable(true, true);
+    }
+}
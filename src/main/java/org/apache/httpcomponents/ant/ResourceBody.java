@@ -0,0 +1,79 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Part body streaming an Ant resource. The resource is opened only when the part is written, so any number of parts can be sent
+ * without keeping more than one stream open.
+ */
+class ResourceBody extends AbstractContentBody {
+
+    private final Resource resource;
+
+    private final String filename;
+
+    private final String charset;
+
+    ResourceBody(Resource resource, String filename, String mimeType, String charset) {
+        super(mimeType);
+        this.resource = resource;
+        this.filename = filename;
+        this.charset = charset;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getCharset() {
+        return charset;
+    }
+
+    public String getTransferEncoding() {
+        return MIME.ENC_BINARY;
+    }
+
+    /**
+     * @return the size of the resource, or -1 if it is unknown, in which case the multipart entity is sent chunked
+     */
+    public long getContentLength() {
+        return resource.getSize();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        InputStream in = resource.getInputStream();
+        try {
+            byte[] buffer = new byte[AbstractHttpClientTask.COPY_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            FileUtils.close(in);
+        }
+    }
+}
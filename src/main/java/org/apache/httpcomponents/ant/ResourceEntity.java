@@ -0,0 +1,69 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Entity reading an Ant resource. The resource is opened each time the content is requested, so the entity is repeatable and
+ * can be sent again on a redirect or a retry without being buffered.
+ */
+class ResourceEntity extends AbstractHttpEntity {
+
+    private final Resource resource;
+
+    ResourceEntity(Resource resource) {
+        this.resource = resource;
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public long getContentLength() {
+        return resource.getSize();
+    }
+
+    public InputStream getContent() throws IOException {
+        return resource.getInputStream();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        InputStream in = resource.getInputStream();
+        try {
+            byte[] buffer = new byte[AbstractHttpClientTask.COPY_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            out.flush();
+        } finally {
+            FileUtils.close(in);
+        }
+    }
+
+    public boolean isStreaming() {
+        return false;
+    }
+}
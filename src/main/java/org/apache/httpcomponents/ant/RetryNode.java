@@ -0,0 +1,175 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.tools.ant.BuildException;
+
+/**
+ * Retry policy of a request: the delay between two attempts grows exponentially from <code>backoff</code> up to <code>maxDelay</code>,
+ * with a random part so that clients failing together don't retry together.
+ */
+public class RetryNode {
+
+    private int attempts = 3;
+
+    private long backoff = 500;
+
+    private long maxDelay = 30000;
+
+    private String on = "io,5xx,429";
+
+    private boolean force;
+
+    private boolean io;
+
+    private Set<String> statuses = new HashSet<String>();
+
+    private final Random random = new Random();
+
+    /**
+     * @param attempts
+     *            the maximum number of times the request is sent, the first one included
+     */
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    /**
+     * @param backoff
+     *            the delay in milliseconds before the first retry, doubled on each following one
+     */
+    public void setBackoff(long backoff) {
+        this.backoff = backoff;
+    }
+
+    /**
+     * @param maxDelay
+     *            the maximum delay in milliseconds between two attempts, also bounding the delay asked by a Retry-After header
+     */
+    public void setMaxDelay(long maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @param on
+     *            comma separated list of the failures to retry: 'io' for the I/O errors, a status code like '503', or a class of status
+     *            codes like '5xx'
+     */
+    public void setOn(String on) {
+        this.on = on;
+    }
+
+    /**
+     * @param force
+     *            if <code>true</code>, the requests which are not idempotent, like POST and PATCH, are retried too
+     */
+    public void setForce(boolean force) {
+        this.force = force;
+    }
+
+    void checkAttributes() {
+        if (attempts < 1) {
+            throw new BuildException("The attribute 'attempts' of retry should be at least 1");
+        }
+        if (backoff < 0 || maxDelay < 0) {
+            throw new BuildException("The delays of retry cannot be negative");
+        }
+        io = false;
+        statuses.clear();
+        for (String condition : on.split(",")) {
+            condition = condition.trim().toLowerCase(Locale.ENGLISH);
+            if (condition.equals("io")) {
+                io = true;
+            } else if (condition.matches("[1-5]([0-9]{2}|xx)")) {
+                statuses.add(condition);
+            } else if (condition.length() > 0) {
+                throw new BuildException("Unsupported retry condition '" + condition + "', expecting 'io', a status code or a class like '5xx'");
+            }
+        }
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    boolean isForce() {
+        return force;
+    }
+
+    boolean isRetriedOnIO() {
+        return io;
+    }
+
+    boolean isRetriedOn(int status) {
+        String code = Integer.toString(status);
+        return statuses.contains(code) || statuses.contains(code.charAt(0) + "xx");
+    }
+
+    /**
+     * @param retry
+     *            the number of the retry, starting at 1
+     * @param response
+     *            the response which failed, <code>null</code> on an I/O error
+     * @return the delay in milliseconds to wait before the retry
+     */
+    long getDelay(int retry, HttpResponse response) {
+        Long retryAfter = response == null ? null : getRetryAfter(response);
+        if (retryAfter != null) {
+            return Math.min(Math.max(retryAfter, 0), maxDelay);
+        }
+        long delay = backoff;
+        for (int i = 1; i < retry && delay < maxDelay; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, maxDelay);
+        // half of the delay is random
+        return delay / 2 + (long) (random.nextDouble() * (delay - delay / 2));
+    }
+
+    /**
+     * @return the delay in milliseconds asked by the Retry-After header, or <code>null</code> if there is none or it is not readable
+     */
+    private static Long getRetryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null) {
+            return null;
+        }
+        String value = header.getValue().trim();
+        try {
+            return Long.parseLong(value) * 1000;
+        } catch (NumberFormatException e) {
+            // not a number of seconds, so expecting an HTTP date
+        }
+        try {
+            Date date = DateUtils.parseDate(value);
+            return date.getTime() - System.currentTimeMillis();
+        } catch (DateParseException e) {
+            return null;
+        }
+    }
+}
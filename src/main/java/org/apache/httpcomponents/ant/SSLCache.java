@@ -0,0 +1,176 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.nio.conn.ssl.SSLLayeringStrategy;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+
+/**
+ * Project scoped cache of the loaded key stores and of the SSL factories, blocking and non-blocking, built from them. The entries are
+ * keyed by the path of the store files and by a hash of their password, and hold the modification time of the files they were loaded
+ * from, so a modified store is reloaded and replaces the previous entry.
+ * <p>
+ * Reusing the same factory also makes the JSSE session cache reusable, so TLS sessions get resumed across tasks.
+ */
+public class SSLCache {
+
+    private static final String REFERENCE_ID = SSLCache.class.getName();
+
+    private static final Object REFERENCE_LOCK = new Object();
+
+    private final Map<String, Versioned<KeyStore>> keystores = new HashMap<String, Versioned<KeyStore>>();
+
+    private final Map<String, Versioned<SSLSocketFactory>> factories = new HashMap<String, Versioned<SSLSocketFactory>>();
+
+    private final Map<String, Versioned<SSLLayeringStrategy>> layeringStrategies = new HashMap<String, Versioned<SSLLayeringStrategy>>();
+
+    public static SSLCache getInstance(Project project) {
+        synchronized (REFERENCE_LOCK) {
+            SSLCache cache = (SSLCache) project.getReference(REFERENCE_ID);
+            if (cache == null) {
+                cache = new SSLCache();
+                project.addReference(REFERENCE_ID, cache);
+            }
+            return cache;
+        }
+    }
+
+    public synchronized SSLSocketFactory getSSLSocketFactory(SSLNode ssl, Task task) {
+        String key = buildKey(ssl);
+        String version = buildVersion(ssl);
+        SSLSocketFactory factory = get(factories, key, version);
+        if (factory != null) {
+            logReuse(ssl, task);
+            return factory;
+        }
+        factory = ssl.createSSLSocketFactory(getTruststore(ssl, task), getKeystore(ssl, task));
+        factories.put(key, new Versioned<SSLSocketFactory>(version, factory));
+        return factory;
+    }
+
+    public synchronized SSLLayeringStrategy getSSLLayeringStrategy(SSLNode ssl, Task task) {
+        String key = buildKey(ssl);
+        String version = buildVersion(ssl);
+        SSLLayeringStrategy layeringStrategy = get(layeringStrategies, key, version);
+        if (layeringStrategy != null) {
+            logReuse(ssl, task);
+            return layeringStrategy;
+        }
+        layeringStrategy = ssl.createSSLLayeringStrategy(getTruststore(ssl, task), getKeystore(ssl, task));
+        layeringStrategies.put(key, new Versioned<SSLLayeringStrategy>(version, layeringStrategy));
+        return layeringStrategy;
+    }
+
+    private void logReuse(SSLNode ssl, Task task) {
+        task.log("Reusing the SSL setup of truststore " + ssl.getTruststoreFile()
+                + (ssl.getKeystoreFile() != null ? " and keystore " + ssl.getKeystoreFile() : ""), Project.MSG_VERBOSE);
+    }
+
+    private KeyStore getTruststore(SSLNode ssl, Task task) {
+        return getKeyStore(ssl, "truststore", ssl.getTruststoreFile(), ssl.getTruststorePassword(), task);
+    }
+
+    private KeyStore getKeystore(SSLNode ssl, Task task) {
+        if (ssl.getKeystoreFile() == null) {
+            return null;
+        }
+        return getKeyStore(ssl, "keystore", ssl.getKeystoreFile(), ssl.getKeystorePassword(), task);
+    }
+
+    private KeyStore getKeyStore(SSLNode ssl, String name, File file, String password, Task task) {
+        String key = buildKey(file, password);
+        String version = Long.toString(file.lastModified());
+        KeyStore keystore = get(keystores, key, version);
+        if (keystore == null) {
+            task.log("Loading " + name + " " + file, Project.MSG_VERBOSE);
+            keystore = ssl.loadKeyStore(name, file, password);
+            keystores.put(key, new Versioned<KeyStore>(version, keystore));
+        }
+        return keystore;
+    }
+
+    /**
+     * @return the cached value if it was built from the same version of the files, <code>null</code> otherwise
+     */
+    private static <T> T get(Map<String, Versioned<T>> cache, String key, String version) {
+        Versioned<T> entry = cache.get(key);
+        if (entry == null || !entry.version.equals(version)) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    private static String buildKey(SSLNode ssl) {
+        String key = buildKey(ssl.getTruststoreFile(), ssl.getTruststorePassword());
+        if (ssl.getKeystoreFile() != null) {
+            key += "#" + buildKey(ssl.getKeystoreFile(), ssl.getKeystorePassword());
+        }
+        return key;
+    }
+
+    private static String buildKey(File file, String password) {
+        return file.getAbsolutePath() + "|" + hash(password);
+    }
+
+    private static String buildVersion(SSLNode ssl) {
+        String version = Long.toString(ssl.getTruststoreFile().lastModified());
+        if (ssl.getKeystoreFile() != null) {
+            version += "#" + ssl.getKeystoreFile().lastModified();
+        }
+        return version;
+    }
+
+    private static String hash(String password) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(password.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new BuildException("SHA-256 is not supported by the JVM", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new BuildException("UTF-8 is not supported by the JVM", e);
+        }
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest) {
+            builder.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+        }
+        return builder.toString();
+    }
+
+    private static class Versioned<T> {
+
+        private final String version;
+
+        private final T value;
+
+        Versioned(String version, T value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
@@ -18,6 +18,24 @@
 package org.apache.httpcomponents.ant;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.conn.ssl.X509HostnameVerifier;
+import org.apache.http.nio.conn.ssl.SSLLayeringStrategy;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.util.FileUtils;
 
 public class SSLNode {
 
@@ -61,4 +79,96 @@ public class SSLNode {
         return truststorePassword;
     }
 
+    public void checkAttributes() {
+        if (truststoreFile == null) {
+            throw new BuildException("Missing attribute 'truststoreFile' on ssl setup");
+        }
+        if (truststorePassword == null) {
+            throw new BuildException("Missing attribute 'truststorePassword' on ssl setup");
+        }
+        if (keystoreFile != null && keystorePassword == null) {
+            throw new BuildException("Missing attribute 'keystorePassword' on ssl setup");
+        }
+        if (keystoreFile == null && keystorePassword != null) {
+            throw new BuildException("Missing attribute 'keystoreFile' on ssl setup");
+        }
+    }
+
+    /**
+     * Get the SSL factory for this setup, reusing the one already built in the project for the same key and trust stores
+     */
+    public SSLSocketFactory buildSSLSocketFactory(Task task) {
+        return SSLCache.getInstance(task.getProject()).getSSLSocketFactory(this, task);
+    }
+
+    /**
+     * Get the SSL layering strategy of the async engine for this setup, reusing the one already built in the project for the same key
+     * and trust stores
+     */
+    public SSLLayeringStrategy buildSSLLayeringStrategy(Task task) {
+        return SSLCache.getInstance(task.getProject()).getSSLLayeringStrategy(this, task);
+    }
+
+    SSLLayeringStrategy createSSLLayeringStrategy(KeyStore truststore, KeyStore keystore) {
+        String algorithm = SSLLayeringStrategy.TLS;
+        SecureRandom secureRandom = null;
+        TrustStrategy trustStrategy = null;
+        X509HostnameVerifier x509HostnameVerifier = SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
+        try {
+            return new SSLLayeringStrategy(algorithm, keystore, keystorePassword, truststore, secureRandom, trustStrategy, x509HostnameVerifier);
+        } catch (KeyManagementException e) {
+            throw new BuildException("The SSL layering strategy could not be setup", e);
+        } catch (UnrecoverableKeyException e) {
+            throw new BuildException("The SSL layering strategy could not be setup", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new BuildException("The SSL layering strategy could not be setup", e);
+        } catch (KeyStoreException e) {
+            throw new BuildException("The SSL layering strategy could not be setup", e);
+        }
+    }
+
+    SSLSocketFactory createSSLSocketFactory(KeyStore truststore, KeyStore keystore) {
+        String algorithm = SSLSocketFactory.TLS;
+        SecureRandom secureRandom = null;
+        TrustStrategy trustStrategy = null;
+        X509HostnameVerifier x509HostnameVerifier = SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
+        try {
+            return new SSLSocketFactory(algorithm, keystore, keystorePassword, truststore, secureRandom, trustStrategy, x509HostnameVerifier);
+        } catch (KeyManagementException e) {
+            throw new BuildException("The SSL factory could not be setup", e);
+        } catch (UnrecoverableKeyException e) {
+            throw new BuildException("The SSL factory could not be setup", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new BuildException("The SSL factory could not be setup", e);
+        } catch (KeyStoreException e) {
+            throw new BuildException("The SSL factory could not be setup", e);
+        }
+    }
+
+    KeyStore loadKeyStore(String name, File file, String password) {
+        KeyStore keystore;
+        try {
+            keystore = KeyStore.getInstance(KeyStore.getDefaultType());
+        } catch (KeyStoreException e) {
+            throw new BuildException("Error while creating the " + name, e);
+        }
+        FileInputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            throw new BuildException("The " + name + " file '" + file + "' could not be found", e);
+        }
+        try {
+            keystore.load(in, password.toCharArray());
+        } catch (NoSuchAlgorithmException e) {
+            throw new BuildException("The " + name + " could not be opened", e);
+        } catch (CertificateException e) {
+            throw new BuildException("The " + name + " could not be opened", e);
+        } catch (IOException e) {
+            throw new BuildException("The " + name + " could not be opened", e);
+        } finally {
+            FileUtils.close(in);
+        }
+        return keystore;
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.auth.AuthScheme;
+import org.apache.http.auth.AuthSchemeFactory;
+import org.apache.http.auth.AuthSchemeRegistry;
+import org.apache.http.auth.AuthenticationException;
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.MalformedChallengeException;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.params.AuthPolicy;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.auth.BasicSchemeFactory;
+import org.apache.http.impl.auth.DigestScheme;
+import org.apache.http.impl.auth.KerberosSchemeFactory;
+import org.apache.http.impl.auth.NTLMSchemeFactory;
+import org.apache.http.impl.auth.SPNegoSchemeFactory;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.tools.ant.Project;
+
+/**
+ * Project scoped authentication caches, one per set of credentials, so the tasks authenticating with the same credentials share the
+ * authentication state per host: a Basic scheme is sent preemptively, and a Digest scheme negotiated by a task is reused with its
+ * nonce by the next ones instead of being challenged again.
+ * <p>
+ * Only the Basic schemes and the Digest schemes created by the registry of {@link #createAuthSchemeRegistry()} are shared: the
+ * latter serialize the computation of the nonce count, so the tasks running in parallel never send the same count twice.
+ */
+public class SharedAuthCache {
+
+    private static final String REFERENCE_ID = SharedAuthCache.class.getName();
+
+    private static final Object REFERENCE_LOCK = new Object();
+
+    private final Map<String, AuthCache> caches = new HashMap<String, AuthCache>();
+
+    public static SharedAuthCache getInstance(Project project) {
+        synchronized (REFERENCE_LOCK) {
+            SharedAuthCache cache = (SharedAuthCache) project.getReference(REFERENCE_ID);
+            if (cache == null) {
+                cache = new SharedAuthCache();
+                project.addReference(REFERENCE_ID, cache);
+            }
+            return cache;
+        }
+    }
+
+    public synchronized AuthCache getAuthCache(CredentialNode credential) {
+        String key = credential.getUsername() + "|" + DigestUtils.sha256Hex(credential.getPassword());
+        AuthCache cache = caches.get(key);
+        if (cache == null) {
+            cache = new SynchronizedAuthCache();
+            caches.put(key, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * The cache is updated by the tasks running in parallel
+     */
+    private static class SynchronizedAuthCache implements AuthCache {
+
+        private final AuthCache cache = new BasicAuthCache();
+
+        public synchronized void put(HttpHost host, AuthScheme authScheme) {
+            if (authScheme instanceof BasicScheme || authScheme instanceof SharedDigestScheme) {
+                cache.put(host, authScheme);
+            }
+        }
+
+        public synchronized AuthScheme get(HttpHost host) {
+            return cache.get(host);
+        }
+
+        public synchronized void remove(HttpHost host) {
+            cache.remove(host);
+        }
+
+        public synchronized void clear() {
+            cache.clear();
+        }
+    }
+
+    /**
+     * The default schemes of the client, with a Digest scheme which can be shared between the requests
+     */
+    public static AuthSchemeRegistry createAuthSchemeRegistry() {
+        AuthSchemeRegistry registry = new AuthSchemeRegistry();
+        registry.register(AuthPolicy.BASIC, new BasicSchemeFactory());
+        registry.register(AuthPolicy.DIGEST, new SharedDigestSchemeFactory());
+        registry.register(AuthPolicy.NTLM, new NTLMSchemeFactory());
+        registry.register(AuthPolicy.SPNEGO, new SPNegoSchemeFactory());
+        registry.register(AuthPolicy.KERBEROS, new KerberosSchemeFactory());
+        return registry;
+    }
+
+    private static class SharedDigestSchemeFactory implements AuthSchemeFactory {
+
+        public AuthScheme newInstance(HttpParams params) {
+            return new SharedDigestScheme();
+        }
+    }
+
+    /**
+     * Each response computed increments the nonce count, and a stale challenge replaces the nonce
+     */
+    private static class SharedDigestScheme extends DigestScheme {
+
+        @Override
+        public synchronized void processChallenge(Header header) throws MalformedChallengeException {
+            super.processChallenge(header);
+        }
+
+        @Override
+        public synchronized Header authenticate(Credentials credentials, HttpRequest request, HttpContext context)
+                throws AuthenticationException {
+            return super.authenticate(credentials, request, context);
+        }
+    }
+}
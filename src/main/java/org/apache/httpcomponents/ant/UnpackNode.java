@@ -0,0 +1,226 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.PatternSet;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.tar.TarBuffer;
+import org.apache.tools.tar.TarConstants;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
+
+/**
+ * Unpack a zip, tar or tar.gz response body into a directory while it is received, optionally keeping only the entries matching
+ * include and exclude patterns
+ */
+public class UnpackNode {
+
+    static final String ZIP = "zip";
+
+    static final String TAR = "tar";
+
+    static final String TAR_GZ = "tar.gz";
+
+    private File todir;
+
+    private String format = ZIP;
+
+    private PatternSet patternSet = new PatternSet();
+
+    public void setTodir(File todir) {
+        this.todir = todir;
+    }
+
+    /**
+     * @param format
+     *            'zip', 'tar' or 'tar.gz'
+     */
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public void setIncludes(String includes) {
+        patternSet.setIncludes(includes);
+    }
+
+    public void setExcludes(String excludes) {
+        patternSet.setExcludes(excludes);
+    }
+
+    public PatternSet.NameEntry createInclude() {
+        return patternSet.createInclude();
+    }
+
+    public PatternSet.NameEntry createExclude() {
+        return patternSet.createExclude();
+    }
+
+    void checkAttributes() {
+        if (todir == null) {
+            throw new BuildException("Missing attribute 'todir' on unpack");
+        }
+        if (!ZIP.equals(format) && !TAR.equals(format) && !TAR_GZ.equals(format)) {
+            throw new BuildException("Unsupported archive format '" + format + "', expecting " + ZIP + ", " + TAR + " or " + TAR_GZ);
+        }
+    }
+
+    File getTodir() {
+        return todir;
+    }
+
+    /**
+     * Read the archive from the stream and write its selected entries into the target directory
+     * 
+     * @return the number of unpacked files. The symbolic and hard links of a tar are not supported, they are skipped with a
+     *         warning.
+     */
+    int unpack(Task task, InputStream in) throws IOException {
+        String[] includes = normalize(patternSet.getIncludePatterns(task.getProject()));
+        String[] excludes = normalize(patternSet.getExcludePatterns(task.getProject()));
+        String root = todir.getCanonicalPath();
+        int count = 0;
+        if (ZIP.equals(format)) {
+            ZipInputStream zip = new ZipInputStream(in);
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (extract(task, zip, entry.getName(), entry.isDirectory(), entry.getTime(), root, includes, excludes)) {
+                    count++;
+                }
+            }
+        } else {
+            TarInputStream tar = new TarInputStream(TAR_GZ.equals(format) ? new GZIPInputStream(in) : in);
+            TarEntry entry;
+            while ((entry = tar.getNextEntry()) != null) {
+                if (!entry.isDirectory() && !isRegularFile(entry)) {
+                    task.log("Skipping " + entry.getName() + ", only the regular files and the directories are unpacked"
+                            + (entry.getLinkName().length() > 0 ? ", not the links (to " + entry.getLinkName() + ")" : ""),
+                            Project.MSG_WARN);
+                    continue;
+                }
+                if (extract(task, tar, entry.getName(), entry.isDirectory(), entry.getModTime().getTime(), root, includes, excludes)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private boolean extract(Task task, InputStream in, String name, boolean directory, long time, String root, String[] includes,
+            String[] excludes) throws IOException {
+        String path = name.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+        if (!isSelected(path, includes, excludes)) {
+            return false;
+        }
+        File file = new File(todir, path);
+        String canonicalPath = file.getCanonicalPath();
+        // an entry like "./" is the directory itself
+        if (!canonicalPath.equals(root) && !canonicalPath.startsWith(root + File.separator)) {
+            throw new BuildException("The archive entry '" + name + "' would be unpacked outside of " + todir);
+        }
+        if (directory) {
+            file.mkdirs();
+            return false;
+        }
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("The directory " + parent + " could not be created");
+        }
+        task.log("Unpacking " + name, Project.MSG_DEBUG);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            byte[] buffer = new byte[AbstractHttpClientTask.COPY_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            FileUtils.close(out);
+        }
+        if (time > 0) {
+            file.setLastModified(time);
+        }
+        return true;
+    }
+
+    /**
+     * The type of the entry is not exposed by the Ant tar API, it is read back from the header
+     */
+    private static boolean isRegularFile(TarEntry entry) {
+        byte[] header = new byte[TarBuffer.DEFAULT_RCDSIZE];
+        entry.writeEntryHeader(header);
+        // the type follows the name, the mode, the owner, the size, the time and the checksum
+        byte linkFlag = header[TarConstants.NAMELEN + TarConstants.MODELEN + TarConstants.UIDLEN + TarConstants.GIDLEN
+                + TarConstants.SIZELEN + TarConstants.MODTIMELEN + TarConstants.CHKSUMLEN];
+        return linkFlag == TarConstants.LF_NORMAL || linkFlag == TarConstants.LF_OLDNORM || linkFlag == TarConstants.LF_CONTIG;
+    }
+
+    private static String[] normalize(String[] patterns) {
+        if (patterns == null) {
+            return null;
+        }
+        String[] normalized = new String[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            String pattern = patterns[i].replace('/', File.separatorChar).replace('\\', File.separatorChar);
+            if (pattern.endsWith(File.separator)) {
+                pattern += "**";
+            }
+            normalized[i] = pattern;
+        }
+        return normalized;
+    }
+
+    private static boolean isSelected(String path, String[] includes, String[] excludes) {
+        boolean included = includes == null || includes.length == 0;
+        if (!included) {
+            for (String include : includes) {
+                if (SelectorUtils.matchPath(include, path)) {
+                    included = true;
+                    break;
+                }
+            }
+        }
+        if (!included) {
+            return false;
+        }
+        if (excludes != null) {
+            for (String exclude : excludes) {
+                if (SelectorUtils.matchPath(exclude, path)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    void log(Task task, int msgLevel) {
+        task.log("Response body unpacked from " + format + " into " + todir, msgLevel);
+    }
+}
@@ -18,8 +18,25 @@
 package org.apache.httpcomponents.ant;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.codec.binary.Base64;
 import org.apache.tools.ant.Project;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -34,8 +51,6 @@ public class AuthHttpClientTaskTest {
     @BeforeClass
     public static void beforeClass() throws Exception {
         httpServerShell.startServer();
-        httpServerShell.setHandler(HTTPServerShell.buildBasicAuth(HTTPServerShell.PING_HANDLER, "Test Realm", "johndoe", "p4S5w0rd",
-                new String[] { "admin" }));
     }
 
     @AfterClass
@@ -44,8 +59,44 @@ public class AuthHttpClientTaskTest {
     }
 
     @Before
-    public void before() {
+    public void before() throws Exception {
         project = new Project();
+        httpServerShell.setHandler(HTTPServerShell.buildBasicAuth(HTTPServerShell.PING_HANDLER, "Test Realm", "johndoe", "p4S5w0rd",
+                new String[] { "admin" }));
+    }
+
+    /**
+     * Count the requests, authenticated or not, received by the wrapped handler
+     */
+    private static class CountingHandler extends HandlerWrapper {
+
+        private final AtomicInteger requests = new AtomicInteger();
+
+        CountingHandler(Handler handler) {
+            setHandler(handler);
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            requests.incrementAndGet();
+            super.handle(target, baseRequest, request, response);
+        }
+    }
+
+    private GetHttpClientTask buildAuthenticatedGet(String scheme) {
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setExpectedStatus(200);
+        CredentialNode cred = new CredentialNode();
+        cred.setUsername("johndoe");
+        cred.setPassword("p4S5w0rd");
+        cred.setScheme(scheme);
+        cred.setPreemptive(true);
+        task.add(cred);
+        task.setResponseProperty("response");
+        return task;
     }
 
     @Test
@@ -83,4 +134,149 @@ public class AuthHttpClientTaskTest {
         task.execute();
     }
 
+    @Test
+    public void testPreemptiveBasicAuth() throws Exception {
+        CountingHandler handler = new CountingHandler(HTTPServerShell.buildBasicAuth(HTTPServerShell.PING_HANDLER, "Test Realm",
+                "johndoe", "p4S5w0rd", new String[] { "admin" }));
+        httpServerShell.setHandler(handler);
+
+        buildAuthenticatedGet("basic").execute();
+        assertEquals(HTTPServerShell.PING_RESPONSE, project.getProperty("response"));
+        assertEquals(1, handler.requests.get());
+    }
+
+    @Test
+    public void testPreemptiveDigestAuth() throws Exception {
+        CountingHandler handler = new CountingHandler(HTTPServerShell.buildDigestAuth(HTTPServerShell.PING_HANDLER, "Test Realm",
+                "johndoe", "p4S5w0rd", new String[] { "admin" }));
+        httpServerShell.setHandler(handler);
+
+        // the first task is challenged
+        buildAuthenticatedGet("digest").execute();
+        assertEquals(2, handler.requests.get());
+
+        // the next ones reuse the nonce
+        buildAuthenticatedGet("digest").execute();
+        buildAuthenticatedGet("digest").execute();
+        assertEquals(4, handler.requests.get());
+    }
+
+    @Test
+    public void testPreemptiveDigestAuthInParallel() throws Exception {
+        CountingHandler handler = new CountingHandler(HTTPServerShell.buildDigestAuth(HTTPServerShell.PING_HANDLER, "Test Realm",
+                "johndoe", "p4S5w0rd", new String[] { "admin" }));
+        httpServerShell.setHandler(handler);
+
+        buildAuthenticatedGet("digest").execute();
+        assertEquals(2, handler.requests.get());
+
+        // the shared nonce is counted once per request; Jetty expects increasing counts, so a request overtaken by another one is
+        // challenged as stale once and then succeeds with the new nonce
+        ParallelHttpClientTask parallel = new ParallelHttpClientTask();
+        parallel.setProject(project);
+        parallel.setThreads(8);
+        for (int i = 0; i < 16; i++) {
+            parallel.addTask(buildAuthenticatedGet("digest"));
+        }
+        parallel.execute();
+        assertTrue(handler.requests.get() >= 18 && handler.requests.get() <= 34);
+    }
+
+    /**
+     * OAuth2 token endpoint on /token, delivering a new token on each call, and resource accepting only the last token delivered
+     */
+    private static class TokenHandler extends AbstractHandler {
+
+        private final AtomicInteger fetches = new AtomicInteger();
+
+        private final long expiresIn;
+
+        TokenHandler(long expiresIn) {
+            this.expiresIn = expiresIn;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            if (target.equals("/token")) {
+                String client = "Basic " + new String(Base64.encodeBase64("client:s3cr3t".getBytes("UTF-8")), "US-ASCII");
+                if (!client.equals(request.getHeader("Authorization"))
+                        || !"client_credentials".equals(request.getParameter("grant_type"))) {
+                    response.setStatus(401);
+                    return;
+                }
+                response.setStatus(200);
+                response.setContentType("application/json");
+                // with JSON escapes, to be unescaped by the client
+                response.getWriter().write("{\"access_token\":\"token" + fetches.incrementAndGet() + "\\/\\\"\",\"token_type\":\"bearer\","
+                        + "\"expires_in\":" + expiresIn + ",\"extra\":{\"scopes\":[\"a\",\"b\"]}}");
+                response.getWriter().close();
+                return;
+            }
+            if (!("Bearer token" + fetches.get() + "/\"").equals(request.getHeader("Authorization"))) {
+                response.setStatus(401);
+                return;
+            }
+            HTTPServerShell.PING_HANDLER.handle(target, baseRequest, request, response);
+        }
+    }
+
+    private GetHttpClientTask buildBearerGet(File cacheFile, long refreshMargin) {
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri() + "/resource");
+        task.setExpectedStatus(200);
+        BearerNode bearer = new BearerNode();
+        bearer.setTokenUri(httpServerShell.getHttpServerUri() + "/token");
+        bearer.setClientId("client");
+        bearer.setClientSecret("s3cr3t");
+        bearer.setCacheFile(cacheFile);
+        bearer.setRefreshMargin(refreshMargin);
+        task.add(bearer);
+        return task;
+    }
+
+    @Test
+    public void testBearer() throws Exception {
+        TokenHandler handler = new TokenHandler(3600);
+        httpServerShell.setHandler(handler);
+
+        File cacheFile = File.createTempFile("httpant-tokens", ".properties");
+        cacheFile.delete();
+        try {
+            buildBearerGet(cacheFile, 60).execute();
+            buildBearerGet(cacheFile, 60).execute();
+            assertEquals(1, handler.fetches.get());
+            assertFalse(cacheFile.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")
+                    && Files.getPosixFilePermissions(cacheFile.toPath()).contains(PosixFilePermission.OTHERS_READ));
+
+            // a new build reads the token from the disk
+            project = new Project();
+            buildBearerGet(cacheFile, 60).execute();
+            assertEquals(1, handler.fetches.get());
+
+            // a token about to expire is refreshed
+            buildBearerGet(cacheFile, 3600).execute();
+            assertEquals(2, handler.fetches.get());
+        } finally {
+            cacheFile.delete();
+        }
+    }
+
+    @Test
+    public void testBearerRejected() throws Exception {
+        TokenHandler handler = new TokenHandler(3600);
+        httpServerShell.setHandler(handler);
+
+        buildBearerGet(null, 60).execute();
+        // the server forgets the token
+        handler.fetches.incrementAndGet();
+        GetHttpClientTask task = buildBearerGet(null, 60);
+        task.setExpectedStatus(401);
+        task.execute();
+
+        buildBearerGet(null, 60).execute();
+        assertEquals(3, handler.fetches.get());
+    }
+
 }
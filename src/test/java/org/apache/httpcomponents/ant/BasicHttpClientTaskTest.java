@@ -18,15 +18,32 @@
 package org.apache.httpcomponents.ant;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.httpcomponents.ant.HTTPServerShell.RequestHandler;
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DefaultLogger;
 import org.apache.tools.ant.Project;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -184,4 +201,152 @@ public class BasicHttpClientTaskTest {
 
         assertEquals(Arrays.asList("somevalue"), handler.getHeaders().get("X-test"));
     }
+
+    @Test
+    public void testGetAsync() throws Exception {
+        httpServerShell.setHandler(HTTPServerShell.PING_HANDLER);
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setEngine("async");
+        task.setStatusProperty("status");
+        task.setResponseProperty("response");
+        task.execute();
+
+        assertEquals("200", project.getProperty("status"));
+        assertEquals(HTTPServerShell.PING_RESPONSE, project.getProperty("response"));
+    }
+
+    @Test
+    public void testGetResponseFileAsync() throws Exception {
+        httpServerShell.setHandler(HTTPServerShell.PING_HANDLER);
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setEngine("async");
+        task.setExpectedStatus(200);
+        File responseFile = new File(tempDir, "response-async.txt");
+        task.setResponseFile(responseFile);
+        task.execute();
+
+        assertEquals(HTTPServerShell.PING_RESPONSE, FileUtils.readFileToString(responseFile));
+    }
+
+    private static final Handler LARGE_BODY_HANDLER = new AbstractHandler() {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            response.addHeader("Content-Type", "text/plain");
+            response.setStatus(200);
+            response.getOutputStream().write("begin\n".getBytes());
+            byte[] middle = new byte[200 * 1024];
+            Arrays.fill(middle, (byte) 'm');
+            response.getOutputStream().write(middle);
+            response.getOutputStream().write("\nend".getBytes());
+            response.getOutputStream().close();
+        }
+    };
+
+    private String executeLogged(GetHttpClientTask task, int level) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DefaultLogger logger = new DefaultLogger();
+        logger.setMessageOutputLevel(level);
+        logger.setOutputPrintStream(new PrintStream(out));
+        logger.setErrorPrintStream(new PrintStream(out));
+        project.addBuildListener(logger);
+        task.execute();
+        return out.toString();
+    }
+
+    @Test
+    public void testBodyPreview() throws Exception {
+        httpServerShell.setHandler(LARGE_BODY_HANDLER);
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setBodyPreviewSize(100);
+        task.setExpectedStatus(200);
+        String log = executeLogged(task, Project.MSG_VERBOSE);
+
+        assertTrue(log.contains("begin"));
+        assertTrue(log.contains("end"));
+        assertTrue(log.contains((200 * 1024 + 10 - 200) + " bytes skipped"));
+        assertFalse(log.contains(new String(new char[101]).replace('\0', 'm')));
+    }
+
+    @Test
+    public void testBodyNotLogged() throws Exception {
+        httpServerShell.setHandler(LARGE_BODY_HANDLER);
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setExpectedStatus(200);
+        String log = executeLogged(task, Project.MSG_INFO);
+
+        assertFalse(log.contains("begin"));
+    }
+
+    private static final String COMPRESSIBLE = new String(new char[10000]).replace('\0', 'a');
+
+    private static final Handler GZIP_HANDLER = new AbstractHandler() {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            response.addHeader("Content-Type", "text/plain");
+            response.setStatus(200);
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                response.addHeader("Content-Encoding", "gzip");
+                GZIPOutputStream out = new GZIPOutputStream(response.getOutputStream());
+                out.write(COMPRESSIBLE.getBytes());
+                out.close();
+            } else {
+                response.getOutputStream().write(COMPRESSIBLE.getBytes());
+                response.getOutputStream().close();
+            }
+        }
+    };
+
+    @Test
+    public void testCompression() throws Exception {
+        httpServerShell.setHandler(GZIP_HANDLER);
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setCompression(true);
+        task.setResponseProperty("response");
+        task.setWireSizeProperty("wireSize");
+        task.setDecodedSizeProperty("decodedSize");
+        task.execute();
+
+        assertEquals(COMPRESSIBLE, project.getProperty("response"));
+        assertEquals(Integer.toString(COMPRESSIBLE.length()), project.getProperty("decodedSize"));
+        assertTrue(Integer.parseInt(project.getProperty("wireSize")) < COMPRESSIBLE.length() / 10);
+    }
+
+    @Test
+    public void testCompressionRaw() throws Exception {
+        httpServerShell.setHandler(GZIP_HANDLER);
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setCompression(true);
+        task.setDecompress(false);
+        File responseFile = new File(tempDir, "response.gz");
+        task.setResponseFile(responseFile);
+        task.execute();
+
+        GZIPInputStream in = new GZIPInputStream(new FileInputStream(responseFile));
+        try {
+            assertEquals(COMPRESSIBLE, IOUtils.toString(in));
+        } finally {
+            in.close();
+        }
+    }
 }
@@ -0,0 +1,678 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.tar.TarConstants;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarOutputStream;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DownloadHttpClientTaskTest {
+
+    private static HTTPServerShell httpServerShell = new HTTPServerShell();
+
+    private static File tempDir;
+
+    private static final byte[] CONTENT = new byte[300 * 1024];
+
+    static {
+        new Random(42).nextBytes(CONTENT);
+    }
+
+    private static final String ETAG = "\"v1\"";
+
+    private Project project;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        httpServerShell.startServer();
+        tempDir = File.createTempFile("httpant-test", "");
+        tempDir.delete();
+        tempDir.mkdir();
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        httpServerShell.stopServer();
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Before
+    public void before() throws Exception {
+        project = new Project();
+        FileUtils.cleanDirectory(tempDir);
+    }
+
+    /**
+     * Serve {@link #CONTENT}, with support of the single byte range requests if enabled
+     */
+    private static class ContentHandler extends AbstractHandler {
+
+        private final boolean acceptRanges;
+
+        private final AtomicInteger rangeRequests = new AtomicInteger();
+
+        ContentHandler(boolean acceptRanges) {
+            this.acceptRanges = acceptRanges;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            if (acceptRanges) {
+                response.setHeader("Accept-Ranges", "bytes");
+            }
+            response.setHeader("ETag", ETAG);
+            if (ETAG.equals(request.getHeader("If-None-Match"))) {
+                response.setStatus(304);
+                return;
+            }
+            int start = 0;
+            int end = CONTENT.length - 1;
+            String range = request.getHeader("Range");
+            String ifRange = request.getHeader("If-Range");
+            if (acceptRanges && range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(ETAG))) {
+                rangeRequests.incrementAndGet();
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                start = Integer.parseInt(bounds[0]);
+                if (bounds.length > 1) {
+                    end = Integer.parseInt(bounds[1]);
+                }
+                response.setStatus(206);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + CONTENT.length);
+            } else {
+                response.setStatus(200);
+            }
+            response.setContentLength(end - start + 1);
+            if (!"HEAD".equals(request.getMethod())) {
+                response.getOutputStream().write(CONTENT, start, end - start + 1);
+            }
+            response.getOutputStream().close();
+        }
+    }
+
+    private GetHttpClientTask buildGet(File responseFile) {
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setTaskName("get");
+        task.setUri(httpServerShell.getHttpServerUri() + "/content");
+        task.setResponseFile(responseFile);
+        task.setExpectedStatus(200);
+        return task;
+    }
+
+    @Test
+    public void testSegments() throws Exception {
+        ContentHandler handler = new ContentHandler(true);
+        httpServerShell.setHandler(handler);
+
+        File file = new File(tempDir, "content");
+        GetHttpClientTask task = buildGet(file);
+        task.setSegments(4);
+        task.setMinSegmentSize(10 * 1024);
+        task.execute();
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(file));
+        assertEquals(4, handler.rangeRequests.get());
+    }
+
+    @Test
+    public void testSegmentsNotSupported() throws Exception {
+        httpServerShell.setHandler(new ContentHandler(false));
+
+        File file = new File(tempDir, "content");
+        GetHttpClientTask task = buildGet(file);
+        task.setSegments(4);
+        task.setMinSegmentSize(10 * 1024);
+        task.execute();
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(file));
+    }
+
+    @Test
+    public void testSegmentsTooSmall() throws Exception {
+        ContentHandler handler = new ContentHandler(true);
+        httpServerShell.setHandler(handler);
+
+        File file = new File(tempDir, "content");
+        GetHttpClientTask task = buildGet(file);
+        task.setSegments(4);
+        task.execute();
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(file));
+        assertEquals(0, handler.rangeRequests.get());
+    }
+
+    @Test
+    public void testSegmentRetried() throws Exception {
+        final AtomicInteger failures = new AtomicInteger();
+        final ContentHandler handler = new ContentHandler(true);
+        httpServerShell.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                // the first range request fails
+                if (request.getHeader("Range") != null && failures.getAndIncrement() == 0) {
+                    response.setStatus(503);
+                    return;
+                }
+                handler.handle(target, baseRequest, request, response);
+            }
+        });
+
+        File file = new File(tempDir, "content");
+        GetHttpClientTask task = buildGet(file);
+        task.setSegments(4);
+        task.setMinSegmentSize(10 * 1024);
+        RetryNode retry = new RetryNode();
+        retry.setBackoff(10);
+        task.add(retry);
+        task.execute();
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(file));
+        assertEquals(4, handler.rangeRequests.get());
+    }
+
+    /**
+     * Serve the ranges of {@link #CONTENT}, the first one last and with the given number of extra bytes, negative for missing ones
+     */
+    private static class WrongRangeHandler extends AbstractHandler {
+
+        private final int extra;
+
+        WrongRangeHandler(int extra) {
+            this.extra = extra;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            response.setHeader("Accept-Ranges", "bytes");
+            String range = request.getHeader("Range");
+            if (range == null) {
+                response.setStatus(200);
+                response.setContentLength(CONTENT.length);
+                if (!"HEAD".equals(request.getMethod())) {
+                    response.getOutputStream().write(CONTENT);
+                }
+                return;
+            }
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = Integer.parseInt(bounds[1]);
+            response.setStatus(206);
+            response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + CONTENT.length);
+            if (start != 0) {
+                response.setContentLength(end - start + 1);
+                response.getOutputStream().write(CONTENT, start, end - start + 1);
+                return;
+            }
+            // the other segments are complete when this one fails, so no aborted request reaches the next test
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            response.getOutputStream().write(new byte[end - start + 1 + extra]);
+            response.getOutputStream().close();
+        }
+    }
+
+    @Test
+    public void testSegmentWrongLength() throws Exception {
+        for (int extra : new int[] { 100, -100 }) {
+            httpServerShell.setHandler(new WrongRangeHandler(extra));
+
+            File file = new File(tempDir, "content");
+            GetHttpClientTask task = buildGet(file);
+            task.setSegments(4);
+            task.setMinSegmentSize(10 * 1024);
+            try {
+                task.execute();
+                fail("A range " + extra + " bytes too long should be rejected");
+            } catch (BuildException e) {
+                // expected
+            }
+            assertFalse(file.exists());
+        }
+    }
+
+    @Test
+    public void testDownloadModesExclusive() throws Exception {
+        httpServerShell.setHandler(new ContentHandler(true));
+
+        GetHttpClientTask task = buildGet(new File(tempDir, "content"));
+        task.setConditional(true);
+        task.setSegments(4);
+        try {
+            task.execute();
+            fail("conditional and segments should be rejected together");
+        } catch (BuildException e) {
+            // expected
+        }
+
+        task = buildGet(new File(tempDir, "content"));
+        task.setResume(true);
+        task.setSegments(4);
+        try {
+            task.execute();
+            fail("resume and segments should be rejected together");
+        } catch (BuildException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAsyncUnsupportedOptions() throws Exception {
+        ChecksumHandler handler = new ChecksumHandler();
+        httpServerShell.setHandler(handler);
+
+        File file = new File(tempDir, "content");
+        for (String option : new String[] { "checksum", "resume", "conditional", "segments", "unpack" }) {
+            GetHttpClientTask task = buildGet(file);
+            task.setEngine(AbstractHttpClientTask.ENGINE_ASYNC);
+            if (option.equals("checksum")) {
+                task.setChecksum(DigestUtils.sha256Hex("something else"));
+            } else if (option.equals("resume")) {
+                task.setResume(true);
+            } else if (option.equals("conditional")) {
+                task.setConditional(true);
+            } else if (option.equals("unpack")) {
+                task.setResponseFile(null);
+                UnpackNode unpack = new UnpackNode();
+                unpack.setTodir(new File(tempDir, "unpacked"));
+                task.add(unpack);
+            } else {
+                task.setSegments(4);
+            }
+            try {
+                task.execute();
+                fail("The option " + option + " should be rejected by the async engine");
+            } catch (BuildException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(option));
+            }
+        }
+        assertEquals(0, handler.contentRequests.get());
+        assertFalse(file.exists());
+    }
+
+    private void writePart(File file, int length, String etag) throws IOException {
+        File part = new File(file.getPath() + ".part");
+        FileUtils.writeByteArrayToFile(part, Arrays.copyOf(CONTENT, length));
+        FileUtils.writeStringToFile(new File(file.getPath() + ".part.properties"), "etag=" + etag + "\n");
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        ContentHandler handler = new ContentHandler(true);
+        httpServerShell.setHandler(handler);
+
+        File file = new File(tempDir, "content");
+        writePart(file, 100 * 1024, ETAG);
+
+        GetHttpClientTask task = buildGet(file);
+        task.setResume(true);
+        task.execute();
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(file));
+        assertEquals(1, handler.rangeRequests.get());
+        assertFalse(new File(file.getPath() + ".part").exists());
+        assertFalse(new File(file.getPath() + ".part.properties").exists());
+    }
+
+    @Test
+    public void testResumeChangedContent() throws Exception {
+        ContentHandler handler = new ContentHandler(true);
+        httpServerShell.setHandler(handler);
+
+        File file = new File(tempDir, "content");
+        writePart(file, 100 * 1024, "\"v0\"");
+
+        GetHttpClientTask task = buildGet(file);
+        task.setResume(true);
+        task.execute();
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(file));
+        assertEquals(0, handler.rangeRequests.get());
+    }
+
+    @Test
+    public void testConditional() throws Exception {
+        httpServerShell.setHandler(new ContentHandler(false));
+
+        File file = new File(tempDir, "content");
+        GetHttpClientTask task = buildGet(file);
+        task.setConditional(true);
+        task.setChangedProperty("changed");
+        task.execute();
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(file));
+        assertEquals("true", project.getProperty("changed"));
+
+        long lastModified = file.lastModified() - 10000;
+        file.setLastModified(lastModified);
+        project = new Project();
+        task = buildGet(file);
+        task.setConditional(true);
+        task.setChangedProperty("changed");
+        task.setStatusProperty("status");
+        task.execute();
+        assertEquals(null, project.getProperty("changed"));
+        assertEquals("304", project.getProperty("status"));
+        assertEquals(lastModified, file.lastModified());
+
+        // the up to date file is checked against the expected digest
+        project = new Project();
+        task = buildGet(file);
+        task.setConditional(true);
+        task.setExpectedDigest(DigestUtils.sha256Hex(CONTENT));
+        task.setDigestProperty("sha256");
+        task.execute();
+        assertEquals(DigestUtils.sha256Hex(CONTENT), project.getProperty("sha256"));
+
+        // a locally modified file is downloaded again
+        FileUtils.writeStringToFile(file, "modified");
+        project = new Project();
+        task = buildGet(file);
+        task.setConditional(true);
+        task.setChangedProperty("changed");
+        task.execute();
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(file));
+        assertEquals("true", project.getProperty("changed"));
+    }
+
+    @Test
+    public void testConditionalError() throws Exception {
+        httpServerShell.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                response.setStatus(404);
+                response.getOutputStream().write("not found".getBytes());
+            }
+        });
+
+        File file = new File(tempDir, "content");
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri() + "/content");
+        task.setResponseFile(file);
+        task.setConditional(true);
+        task.setChangedProperty("changed");
+        task.execute();
+        assertEquals(null, project.getProperty("changed"));
+    }
+
+    @Test
+    public void testDigest() throws Exception {
+        httpServerShell.setHandler(new ContentHandler(true));
+
+        File file = new File(tempDir, "content");
+        GetHttpClientTask task = buildGet(file);
+        task.setDigestProperty("sha256");
+        task.setExpectedDigest(DigestUtils.sha256Hex(CONTENT).toUpperCase());
+        task.execute();
+        assertEquals(DigestUtils.sha256Hex(CONTENT), project.getProperty("sha256"));
+
+        // the segments are digested once written
+        task = buildGet(file);
+        task.setSegments(4);
+        task.setMinSegmentSize(10 * 1024);
+        task.setDigestAlgorithm("MD5");
+        task.setDigestProperty("md5");
+        task.execute();
+        assertEquals(DigestUtils.md5Hex(CONTENT), project.getProperty("md5"));
+    }
+
+    @Test
+    public void testDigestMismatch() throws Exception {
+        httpServerShell.setHandler(new ContentHandler(false));
+
+        File file = new File(tempDir, "content");
+        GetHttpClientTask task = buildGet(file);
+        task.setExpectedDigest(DigestUtils.sha256Hex("something else"));
+        try {
+            task.execute();
+            fail("The digest should not match");
+        } catch (BuildException e) {
+            // expected
+        }
+        assertFalse(file.exists());
+    }
+
+    /**
+     * Serve the SHA-256 of {@link #CONTENT} as a sidecar file, and {@link #CONTENT} otherwise
+     */
+    private static class ChecksumHandler extends ContentHandler {
+
+        private final AtomicInteger contentRequests = new AtomicInteger();
+
+        ChecksumHandler() {
+            super(false);
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            if (target.endsWith(".sha256")) {
+                response.setStatus(200);
+                response.getWriter().write(DigestUtils.sha256Hex(CONTENT) + "  content\n");
+                response.getWriter().close();
+                return;
+            }
+            contentRequests.incrementAndGet();
+            super.handle(target, baseRequest, request, response);
+        }
+    }
+
+    @Test
+    public void testChecksum() throws Exception {
+        ChecksumHandler handler = new ChecksumHandler();
+        httpServerShell.setHandler(handler);
+
+        File file = new File(tempDir, "content");
+        File hashCache = new File(tempDir, "hashes.properties");
+        GetHttpClientTask task = buildGet(file);
+        task.setChecksumUri("content.sha256");
+        task.setHashCache(hashCache);
+        task.execute();
+        assertEquals(1, handler.contentRequests.get());
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(file));
+        assertTrue(hashCache.exists());
+
+        // the local file matches the published checksum
+        task = buildGet(file);
+        task.setChecksumUri(httpServerShell.getHttpServerUri() + "/content.sha256");
+        task.setHashCache(hashCache);
+        task.execute();
+        assertEquals(1, handler.contentRequests.get());
+
+        project = new Project();
+        task = buildGet(file);
+        task.setChecksum(DigestUtils.sha256Hex(CONTENT).toUpperCase());
+        task.setStatusProperty("status");
+        task.setChangedProperty("changed");
+        task.setDigestProperty("sha256");
+        task.execute();
+        assertEquals(1, handler.contentRequests.get());
+        assertEquals("304", project.getProperty("status"));
+        assertEquals(null, project.getProperty("changed"));
+        assertEquals(DigestUtils.sha256Hex(CONTENT), project.getProperty("sha256"));
+
+        // a changed local file is downloaded again
+        FileUtils.writeStringToFile(file, "changed");
+        project = new Project();
+        task = buildGet(file);
+        task.setChecksumUri("content.sha256");
+        task.setHashCache(hashCache);
+        task.setChangedProperty("changed");
+        task.execute();
+        assertEquals(2, handler.contentRequests.get());
+        assertEquals("true", project.getProperty("changed"));
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(file));
+    }
+
+    @Test
+    public void testChecksumMismatch() throws Exception {
+        httpServerShell.setHandler(new ContentHandler(false));
+
+        File file = new File(tempDir, "content");
+        GetHttpClientTask task = buildGet(file);
+        task.setChecksum(DigestUtils.sha256Hex("something else"));
+        try {
+            task.execute();
+            fail("The checksum should not match");
+        } catch (BuildException e) {
+            // expected
+        }
+        assertFalse(file.exists());
+    }
+
+    /**
+     * Serve the given bytes
+     */
+    private static class BytesHandler extends AbstractHandler {
+
+        private final byte[] bytes;
+
+        BytesHandler(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            response.setStatus(200);
+            response.setContentLength(bytes.length);
+            response.getOutputStream().write(bytes);
+            response.getOutputStream().close();
+        }
+    }
+
+    @Test
+    public void testUnpackZip() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        zip.putNextEntry(new ZipEntry("sdk/"));
+        zip.putNextEntry(new ZipEntry("sdk/lib/sdk.jar"));
+        zip.write(CONTENT);
+        zip.putNextEntry(new ZipEntry("sdk/README.txt"));
+        zip.write("readme".getBytes());
+        zip.close();
+        httpServerShell.setHandler(new BytesHandler(bytes.toByteArray()));
+
+        File dir = new File(tempDir, "unpacked");
+        GetHttpClientTask task = buildGet(null);
+        UnpackNode unpack = new UnpackNode();
+        unpack.setTodir(dir);
+        unpack.setExcludes("**/*.txt");
+        task.add(unpack);
+        task.execute();
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(new File(dir, "sdk/lib/sdk.jar")));
+        assertFalse(new File(dir, "sdk/README.txt").exists());
+    }
+
+    @Test
+    public void testUnpackTarGz() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TarOutputStream tar = new TarOutputStream(new GZIPOutputStream(bytes));
+        TarEntry entry = new TarEntry("sdk/lib/sdk.jar");
+        entry.setSize(CONTENT.length);
+        tar.putNextEntry(entry);
+        tar.write(CONTENT);
+        tar.closeEntry();
+        entry = new TarEntry("sdk/bin/tool");
+        entry.setSize(4);
+        tar.putNextEntry(entry);
+        tar.write("tool".getBytes());
+        tar.closeEntry();
+        tar.close();
+        httpServerShell.setHandler(new BytesHandler(bytes.toByteArray()));
+
+        File dir = new File(tempDir, "unpacked");
+        GetHttpClientTask task = buildGet(null);
+        UnpackNode unpack = new UnpackNode();
+        unpack.setTodir(dir);
+        unpack.setFormat("tar.gz");
+        unpack.setIncludes("sdk/lib/");
+        task.add(unpack);
+        task.execute();
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(new File(dir, "sdk/lib/sdk.jar")));
+        assertFalse(new File(dir, "sdk/bin/tool").exists());
+    }
+
+    @Test
+    public void testUnpackTarOfCurrentDir() throws Exception {
+        // as made by "tar -C dir ."
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TarOutputStream tar = new TarOutputStream(bytes);
+        tar.putNextEntry(new TarEntry("./"));
+        tar.closeEntry();
+        TarEntry entry = new TarEntry("./tool");
+        entry.setSize(4);
+        tar.putNextEntry(entry);
+        tar.write("tool".getBytes());
+        tar.closeEntry();
+        entry = new TarEntry("./link", TarConstants.LF_SYMLINK);
+        tar.putNextEntry(entry);
+        tar.closeEntry();
+        tar.close();
+        httpServerShell.setHandler(new BytesHandler(bytes.toByteArray()));
+
+        File dir = new File(tempDir, "unpacked");
+        GetHttpClientTask task = buildGet(null);
+        UnpackNode unpack = new UnpackNode();
+        unpack.setTodir(dir);
+        unpack.setFormat("tar");
+        task.add(unpack);
+        task.execute();
+
+        assertEquals("tool", FileUtils.readFileToString(new File(dir, "tool")));
+        assertFalse(new File(dir, "link").exists());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.util.IdentityMapper;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GetAllHttpClientTaskTest {
+
+    private static HTTPServerShell httpServerShell = new HTTPServerShell();
+
+    private static File tempDir;
+
+    private Project project;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        httpServerShell.startServer();
+        tempDir = File.createTempFile("httpant-test", "");
+        tempDir.delete();
+        tempDir.mkdir();
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        httpServerShell.stopServer();
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Before
+    public void before() throws Exception {
+        project = new Project();
+        FileUtils.cleanDirectory(tempDir);
+        httpServerShell.setHandler(PATH_HANDLER);
+    }
+
+    /**
+     * Respond with the requested path, or with a 404 if the path contains 'missing'
+     */
+    private static final AbstractHandler PATH_HANDLER = new AbstractHandler() {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            if (target.contains("missing")) {
+                response.setStatus(404);
+                return;
+            }
+            response.setStatus(200);
+            response.setContentLength(target.getBytes().length);
+            response.getOutputStream().write(target.getBytes());
+            response.getOutputStream().close();
+        }
+    };
+
+    private GetAllHttpClientTask buildGetAll() {
+        GetAllHttpClientTask task = new GetAllHttpClientTask();
+        task.setProject(project);
+        task.setTaskName("getall");
+        task.setTodir(tempDir);
+        return task;
+    }
+
+    @Test
+    public void testGetAll() throws Exception {
+        String uri = httpServerShell.getHttpServerUri();
+        GetAllHttpClientTask task = buildGetAll();
+        task.setConcurrency(2);
+        task.setUris(uri + "/a/one.txt, " + uri + "/b/two.txt " + uri + "/three.txt");
+        task.execute();
+
+        assertEquals("/a/one.txt", FileUtils.readFileToString(new File(tempDir, "one.txt")));
+        assertEquals("/b/two.txt", FileUtils.readFileToString(new File(tempDir, "two.txt")));
+        assertEquals("/three.txt", FileUtils.readFileToString(new File(tempDir, "three.txt")));
+    }
+
+    @Test
+    public void testUrisFileWithMapper() throws Exception {
+        String uri = httpServerShell.getHttpServerUri();
+        File urisFile = File.createTempFile("httpant-uris", ".txt");
+        try {
+            FileUtils.writeStringToFile(urisFile, "# uris\n" + uri + "/a/one.txt\n\n" + uri + "/b/two.txt\n");
+
+            GetAllHttpClientTask task = buildGetAll();
+            task.setUrisFile(urisFile);
+            task.add(new IdentityMapper());
+            task.setEngine("async");
+            task.execute();
+        } finally {
+            urisFile.delete();
+        }
+
+        assertEquals("/a/one.txt", FileUtils.readFileToString(new File(tempDir, "a/one.txt")));
+        assertEquals("/b/two.txt", FileUtils.readFileToString(new File(tempDir, "b/two.txt")));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        String uri = httpServerShell.getHttpServerUri();
+        GetAllHttpClientTask task = buildGetAll();
+        task.setUris(uri + "/one.txt " + uri + "/missing.txt");
+        try {
+            task.execute();
+            fail("BuildException expected");
+        } catch (BuildException e) {
+            // ok
+        }
+
+        assertEquals("/one.txt", FileUtils.readFileToString(new File(tempDir, "one.txt")));
+        assertFalse(new File(tempDir, "missing.txt").exists());
+    }
+
+    @Test
+    public void testSameFileName() throws Exception {
+        String uri = httpServerShell.getHttpServerUri();
+        GetAllHttpClientTask task = buildGetAll();
+        task.setUris(uri + "/a/one.txt " + uri + "/b/one.txt");
+        try {
+            task.execute();
+            fail("BuildException expected");
+        } catch (BuildException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("/b/one.txt"));
+        }
+
+        assertFalse(new File(tempDir, "one.txt").exists());
+    }
+}
@@ -32,10 +32,12 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.Part;
 
 import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.security.Authenticator;
 import org.eclipse.jetty.security.ConstraintMapping;
 import org.eclipse.jetty.security.ConstraintSecurityHandler;
 import org.eclipse.jetty.security.HashLoginService;
 import org.eclipse.jetty.security.authentication.BasicAuthenticator;
+import org.eclipse.jetty.security.authentication.DigestAuthenticator;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Request;
@@ -118,8 +120,17 @@ public class HTTPServerShell {
     }
 
     public static Handler buildBasicAuth(Handler handler, String realm, String user, String password, String[] roles) {
+        return buildAuth(handler, realm, user, password, roles, Constraint.__BASIC_AUTH, new BasicAuthenticator());
+    }
+
+    public static Handler buildDigestAuth(Handler handler, String realm, String user, String password, String[] roles) {
+        return buildAuth(handler, realm, user, password, roles, Constraint.__DIGEST_AUTH, new DigestAuthenticator());
+    }
+
+    private static Handler buildAuth(Handler handler, String realm, String user, String password, String[] roles, String method,
+            Authenticator authenticator) {
         Constraint constraint = new Constraint();
-        constraint.setName(Constraint.__BASIC_AUTH);
+        constraint.setName(method);
         constraint.setRoles(roles);
         constraint.setAuthenticate(true);
 
@@ -134,7 +145,7 @@ public class HTTPServerShell {
         ConstraintSecurityHandler secureHandler = new ConstraintSecurityHandler();
         secureHandler.setHandler(handler);
         secureHandler.setRealmName(realm);
-        secureHandler.setAuthenticator(new BasicAuthenticator());
+        secureHandler.setAuthenticator(authenticator);
         secureHandler.addConstraintMapping(cm);
         secureHandler.setLoginService(loginService);
         return secureHandler;
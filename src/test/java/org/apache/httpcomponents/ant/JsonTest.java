@@ -0,0 +1,69 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class JsonTest {
+
+    @Test
+    public void testParseObject() {
+        Map<String, String> members = Json.parseObject(" { \"access_token\" : \"abc\", \"expires_in\": 3600 ,\"ok\":true } ");
+        assertEquals(3, members.size());
+        assertEquals("abc", members.get("access_token"));
+        assertEquals("3600", members.get("expires_in"));
+        assertEquals("true", members.get("ok"));
+    }
+
+    @Test
+    public void testEmptyObject() {
+        assertTrue(Json.parseObject("{ }").isEmpty());
+    }
+
+    @Test
+    public void testEscapes() {
+        Map<String, String> members = Json.parseObject("{\"a\\\"b\":\"x\\n\\t\\\\\\/\\u00e9\"}");
+        assertEquals("x\n\t\\/\u00e9", members.get("a\"b"));
+    }
+
+    @Test
+    public void testNestedValues() {
+        Map<String, String> members = Json.parseObject("{\"scope\":[\"a\",\"]\"],\"user\":{\"name\":\"}\"},\"token\":\"t\"}");
+        assertEquals("[\"a\",\"]\"]", members.get("scope"));
+        assertEquals("{\"name\":\"}\"}", members.get("user"));
+        assertEquals("t", members.get("token"));
+    }
+
+    @Test
+    public void testInvalid() {
+        for (String json : new String[] { "", "[]", "{\"a\":\"b\"", "{\"a\" \"b\"}", "{\"a\":\"b", "{\"a\":\"\\u12\"}" }) {
+            try {
+                Json.parseObject(json);
+                fail("Invalid JSON accepted: " + json);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
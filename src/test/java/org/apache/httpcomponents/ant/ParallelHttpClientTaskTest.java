@@ -0,0 +1,280 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DefaultLogger;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.Echo;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ParallelHttpClientTaskTest {
+
+    private static HTTPServerShell httpServerShell = new HTTPServerShell();
+
+    private Project project;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        httpServerShell.startServer();
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        httpServerShell.stopServer();
+    }
+
+    @Before
+    public void before() {
+        project = new Project();
+    }
+
+    /**
+     * Respond with the requested delay as content, after sleeping that delay, and with the requested status
+     */
+    private static class SlowHandler extends AbstractHandler {
+
+        private final AtomicInteger concurrent = new AtomicInteger();
+
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            int current = concurrent.incrementAndGet();
+            synchronized (maxConcurrent) {
+                maxConcurrent.set(Math.max(maxConcurrent.get(), current));
+            }
+            try {
+                String delay = baseRequest.getParameter("delay");
+                Thread.sleep(Long.parseLong(delay));
+                String status = baseRequest.getParameter("status");
+                response.setStatus(status == null ? 200 : Integer.parseInt(status));
+                response.setContentLength(delay.getBytes().length);
+                response.getOutputStream().write(delay.getBytes());
+                response.getOutputStream().close();
+            } catch (InterruptedException e) {
+                throw new ServletException(e);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+    }
+
+    private GetHttpClientTask buildGet(long delay, int status, String responseProperty) {
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setTaskName("get");
+        task.setUri(httpServerShell.getHttpServerUri() + "/?delay=" + delay + "&status=" + status);
+        task.setExpectedStatus(200);
+        task.setResponseProperty(responseProperty);
+        return task;
+    }
+
+    private ParallelHttpClientTask buildParallel() {
+        ParallelHttpClientTask parallel = new ParallelHttpClientTask();
+        parallel.setProject(project);
+        parallel.setTaskName("httpparallel");
+        return parallel;
+    }
+
+    @Test
+    public void testDeterministicProperties() throws Exception {
+        httpServerShell.setHandler(new SlowHandler());
+
+        ParallelHttpClientTask parallel = buildParallel();
+        parallel.setThreads(3);
+        parallel.addTask(buildGet(300, 200, "response"));
+        parallel.addTask(buildGet(0, 200, "response"));
+        parallel.addTask(buildGet(100, 200, "response2"));
+        parallel.execute();
+
+        assertEquals("300", project.getProperty("response"));
+        assertEquals("100", project.getProperty("response2"));
+    }
+
+    @Test
+    public void testMaxPerRoute() throws Exception {
+        SlowHandler handler = new SlowHandler();
+        httpServerShell.setHandler(handler);
+
+        ParallelHttpClientTask parallel = buildParallel();
+        parallel.setThreads(6);
+        parallel.setMaxPerRoute(2);
+        for (int i = 0; i < 6; i++) {
+            parallel.addTask(buildGet(100, 200, "response" + i));
+        }
+        parallel.execute();
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals("100", project.getProperty("response" + i));
+        }
+        assertTrue(handler.maxConcurrent.get() <= 2);
+    }
+
+    @Test
+    public void testCollectAllFailures() throws Exception {
+        httpServerShell.setHandler(new SlowHandler());
+
+        ParallelHttpClientTask parallel = buildParallel();
+        parallel.addTask(buildGet(0, 500, "response1"));
+        parallel.addTask(buildGet(200, 200, "response2"));
+        try {
+            parallel.execute();
+            fail("BuildException expected");
+        } catch (BuildException e) {
+            // ok
+        }
+        assertEquals("200", project.getProperty("response2"));
+    }
+
+    @Test
+    public void testFailFast() throws Exception {
+        httpServerShell.setHandler(new SlowHandler());
+
+        ParallelHttpClientTask parallel = buildParallel();
+        parallel.setThreads(1);
+        parallel.setFailFast(true);
+        parallel.addTask(buildGet(0, 500, "response1"));
+        parallel.addTask(buildGet(0, 200, "response2"));
+        try {
+            parallel.execute();
+            fail("BuildException expected");
+        } catch (BuildException e) {
+            // ok
+        }
+        assertEquals(null, project.getProperty("response2"));
+    }
+
+    @Test
+    public void testOnlyHttpTasks() throws Exception {
+        ParallelHttpClientTask parallel = buildParallel();
+        Echo echo = new Echo();
+        echo.setProject(project);
+        parallel.addTask(echo);
+        try {
+            parallel.execute();
+            fail("BuildException expected");
+        } catch (BuildException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        httpServerShell.setHandler(new SlowHandler());
+
+        ParallelHttpClientTask parallel = buildParallel();
+        parallel.setEngine("async");
+        parallel.setThreads(20);
+        for (int i = 0; i < 50; i++) {
+            parallel.addTask(buildGet(50, 200, "response" + i));
+        }
+        parallel.addTask(buildGet(0, 500, "failed"));
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        project.addBuildListener(new DefaultLogger() {
+            @Override
+            public void taskStarted(BuildEvent event) {
+                started.incrementAndGet();
+            }
+
+            @Override
+            public void taskFinished(BuildEvent event) {
+                finished.incrementAndGet();
+            }
+
+            @Override
+            public void messageLogged(BuildEvent event) {
+                // only the task events are counted
+            }
+        });
+        try {
+            parallel.execute();
+            fail("BuildException expected");
+        } catch (BuildException e) {
+            // ok
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("50", project.getProperty("response" + i));
+        }
+        assertEquals(51, started.get());
+        assertEquals(51, finished.get());
+    }
+
+    @Test
+    public void testAsyncFailFastOnPrepare() throws Exception {
+        httpServerShell.setHandler(new SlowHandler());
+
+        ParallelHttpClientTask parallel = buildParallel();
+        parallel.setEngine("async");
+        parallel.setFailFast(true);
+        parallel.addTask(buildGet(2000, 200, "response1"));
+        GetHttpClientTask task = buildGet(0, 200, "response2");
+        task.setUri("http://local host/");
+        parallel.addTask(task);
+        long start = System.currentTimeMillis();
+        try {
+            parallel.execute();
+            fail("BuildException expected");
+        } catch (BuildException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("local host"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        assertEquals(null, project.getProperty("response1"));
+    }
+
+    @Test
+    public void testAsyncUnsupportedOption() throws Exception {
+        SlowHandler handler = new SlowHandler();
+        httpServerShell.setHandler(handler);
+
+        ParallelHttpClientTask parallel = buildParallel();
+        parallel.setEngine("async");
+        parallel.addTask(buildGet(0, 200, "response1"));
+        GetHttpClientTask task = buildGet(0, 200, "response2");
+        task.add(new RetryNode());
+        parallel.addTask(task);
+        try {
+            parallel.execute();
+            fail("BuildException expected");
+        } catch (BuildException e) {
+            assertTrue(e.getMessage().contains("retry"));
+        }
+        assertEquals(null, project.getProperty("response1"));
+        assertEquals(0, handler.maxConcurrent.get());
+    }
+}
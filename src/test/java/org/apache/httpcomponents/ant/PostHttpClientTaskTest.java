@@ -18,17 +18,41 @@
 package org.apache.httpcomponents.ant;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.util.List;
-
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.Part;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
 import org.apache.httpcomponents.ant.HTTPServerShell.RequestHandler;
+import org.apache.tools.ant.DefaultLogger;
 import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.Resource;
 import org.apache.tools.ant.types.resources.PropertyResource;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -145,6 +169,177 @@ public class PostHttpClientTaskTest {
         assertEquals(data, project.getProperty("response"));
     }
 
+    @Test
+    public void testSentDigest() throws Exception {
+        httpServerShell.setHandler(HTTPServerShell.ECHO_HANDLER);
+
+        String data = "Ant and HttpClient rulez";
+
+        PostHttpClientTask task = new PostHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setExpectedStatus(200);
+        BasicEntityNode entity = new BasicEntityNode();
+        entity.setValue(data);
+        task.add(entity);
+        task.setDigestAlgorithm("SHA-1");
+        task.setSentDigestProperty("sent");
+        task.setDigestProperty("received");
+        task.setResponseProperty("response");
+        task.execute();
+
+        assertEquals(DigestUtils.shaHex(data), project.getProperty("sent"));
+        assertEquals(DigestUtils.shaHex(data), project.getProperty("received"));
+    }
+
+    @Test
+    public void testRepeatableResourceEntity() throws Exception {
+        httpServerShell.setHandler(HTTPServerShell.ECHO_HANDLER);
+
+        String data = "Ant and HttpClient rulez";
+        project.setNewProperty("data", data);
+        PropertyResource resourceData = new PropertyResource(project, "data");
+
+        BasicEntityNode entity = new BasicEntityNode();
+        entity.add(resourceData);
+        HttpEntity httpEntity = entity.buildHttpEntity();
+        assertTrue(httpEntity.isRepeatable());
+        assertEquals(data, EntityUtils.toString(httpEntity));
+        assertEquals(data, EntityUtils.toString(httpEntity));
+
+        // the entity is built again on each execution
+        PostHttpClientTask task = new PostHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setExpectedStatus(200);
+        task.add(entity);
+        task.setResponseProperty("response");
+        task.execute();
+        assertEquals(data, project.getProperty("response"));
+
+        task.setResponseProperty("response2");
+        task.execute();
+        assertEquals(data, project.getProperty("response2"));
+    }
+
+    /**
+     * Echo the request body after having decoded it
+     */
+    private static class DecodingEchoHandler extends AbstractHandler {
+
+        private String contentEncoding;
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            contentEncoding = request.getHeader("Content-Encoding");
+            InputStream in = request.getInputStream();
+            if ("gzip".equals(contentEncoding)) {
+                in = new GZIPInputStream(in);
+            } else if ("deflate".equals(contentEncoding)) {
+                in = new InflaterInputStream(in);
+            }
+            byte[] body = IOUtils.toByteArray(in);
+            response.setStatus(200);
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+            response.getOutputStream().close();
+        }
+    }
+
+    @Test
+    public void testCompressedEntity() throws Exception {
+        DecodingEchoHandler handler = new DecodingEchoHandler();
+        httpServerShell.setHandler(handler);
+
+        String data = "Ant and HttpClient rulez";
+        File dataFile = new File(tempDir, "data.txt");
+        FileUtils.writeStringToFile(dataFile, data);
+
+        // the async engine reads the compressed content as a stream
+        for (String engine : new String[] { AbstractHttpClientTask.ENGINE_SYNC, AbstractHttpClientTask.ENGINE_ASYNC }) {
+            for (String compress : new String[] { "gzip", "deflate" }) {
+                PostHttpClientTask task = new PostHttpClientTask();
+                task.setProject(project);
+                task.setEngine(engine);
+                task.setUri(httpServerShell.getHttpServerUri());
+                task.setExpectedStatus(200);
+                BasicEntityNode entity = new BasicEntityNode();
+                entity.setFile(dataFile);
+                entity.setCompress(compress);
+                task.add(entity);
+                task.setResponseProperty("response-" + engine + "-" + compress);
+                task.execute();
+
+                assertEquals(compress, handler.contentEncoding);
+                assertEquals(data, project.getProperty("response-" + engine + "-" + compress));
+            }
+        }
+    }
+
+    @Test
+    public void testExpectContinue() throws Exception {
+        httpServerShell.setHandler(HTTPServerShell.ECHO_HANDLER);
+
+        String data = "Ant and HttpClient rulez";
+        File dataFile = new File(tempDir, "data.txt");
+        FileUtils.writeStringToFile(dataFile, data);
+
+        PutHttpClientTask task = new PutHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setExpectedStatus(200);
+        task.setExpectContinue(true);
+        BasicEntityNode entity = new BasicEntityNode();
+        entity.setFile(dataFile);
+        task.add(entity);
+        task.setResponseProperty("response");
+        task.execute();
+
+        assertEquals(data, project.getProperty("response"));
+    }
+
+    @Test
+    public void testExpectContinueRejected() throws Exception {
+        final AtomicReference<String> expect = new AtomicReference<String>();
+        httpServerShell.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                // the body is not read, so 100 Continue is never sent
+                expect.set(request.getHeader("Expect"));
+                response.setStatus(413);
+                response.getOutputStream().close();
+            }
+        });
+
+        File dataFile = new File(tempDir, "large.bin");
+        FileUtils.writeByteArrayToFile(dataFile, new byte[1024 * 1024]);
+
+        PostHttpClientTask task = new PostHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setStatusProperty("status");
+        task.setExpectContinue(true);
+        task.setContinueWait(10000);
+        BasicEntityNode entity = new BasicEntityNode();
+        entity.setFile(dataFile);
+        task.add(entity);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DefaultLogger logger = new DefaultLogger();
+        logger.setMessageOutputLevel(Project.MSG_INFO);
+        logger.setOutputPrintStream(new PrintStream(out));
+        project.addBuildListener(logger);
+        long start = System.currentTimeMillis();
+        task.execute();
+
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals("100-continue", expect.get());
+        assertEquals("413", project.getProperty("status"));
+        assertTrue(out.toString(), out.toString().contains((1024 * 1024) + " bytes not sent"));
+    }
+
     @Test
     public void testFieldPart() throws Exception {
         RequestHandler handler = new RequestHandler();
@@ -169,6 +364,32 @@ public class PostHttpClientTaskTest {
         assertEquals("value", IOUtils.toString(parts.get(0).getInputStream()));
     }
 
+    @Test
+    public void testFieldPartAsync() throws Exception {
+        RequestHandler handler = new RequestHandler();
+        httpServerShell.setHandler(handler);
+
+        // the async engine reads the multipart body through a pipe
+        PostHttpClientTask task = new PostHttpClientTask();
+        task.setProject(project);
+        task.setEngine(AbstractHttpClientTask.ENGINE_ASYNC);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setExpectedStatus(200);
+        MultipartEntityNode entity = new MultipartEntityNode();
+        FieldPartNode part = new FieldPartNode();
+        part.setName("field");
+        part.setValue("value");
+        entity.add(part);
+        task.add(entity);
+        task.execute();
+
+        List<Part> parts = handler.getParts();
+
+        assertEquals(1, parts.size());
+        assertEquals("field", parts.get(0).getName());
+        assertEquals("value", IOUtils.toString(parts.get(0).getInputStream()));
+    }
+
     @Test
     public void testMultiFieldPart() throws Exception {
         RequestHandler handler = new RequestHandler();
@@ -231,6 +452,137 @@ public class PostHttpClientTaskTest {
         assertEquals(data2, IOUtils.toString(parts.get(0).getInputStream()));
     }
 
+    @Test
+    public void testCompressedPart() throws Exception {
+        RequestHandler handler = new RequestHandler();
+        httpServerShell.setHandler(handler);
+
+        PostHttpClientTask task = new PostHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setExpectedStatus(200);
+        MultipartEntityNode entity = new MultipartEntityNode();
+        FieldPartNode part = new FieldPartNode();
+        part.setName("field");
+        part.setValue("value");
+        part.setCompress("gzip");
+        entity.add(part);
+        task.add(entity);
+        task.execute();
+
+        List<Part> parts = handler.getParts();
+
+        assertEquals(1, parts.size());
+        assertEquals("gzip", parts.get(0).getHeader("Content-Encoding"));
+        assertEquals("value", IOUtils.toString(new GZIPInputStream(parts.get(0).getInputStream())));
+    }
+
+    @Test
+    public void testFileSetPart() throws Exception {
+        RequestHandler handler = new RequestHandler();
+        httpServerShell.setHandler(handler);
+
+        File reportsDir = new File(tempDir, "reports");
+        for (int i = 0; i < 3; i++) {
+            FileUtils.writeStringToFile(new File(reportsDir, "TEST-" + i + ".xml"), "<testsuite id=\"" + i + "\"/>");
+        }
+
+        PostHttpClientTask task = new PostHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setExpectedStatus(200);
+        MultipartEntityNode entity = new MultipartEntityNode();
+        FileSetPartNode part = new FileSetPartNode();
+        part.setName("report");
+        part.setMimeType("text/xml");
+        FileSet fileSet = new FileSet();
+        fileSet.setProject(project);
+        fileSet.setDir(reportsDir);
+        part.add(fileSet);
+        entity.add(part);
+        task.add(entity);
+        task.execute();
+
+        List<Part> parts = handler.getParts();
+
+        assertEquals(3, parts.size());
+        for (Part p : parts) {
+            assertEquals("report", p.getName());
+            assertEquals("text/xml", p.getContentType());
+            String id = p.getHeader("Content-Disposition").replaceAll(".*filename=\"TEST-(.)\\.xml\".*", "$1");
+            assertEquals("<testsuite id=\"" + id + "\"/>", IOUtils.toString(p.getInputStream()));
+        }
+        // the length is known up front, so the body is not chunked
+        assertEquals(1, handler.getHeaders().get("Content-Length").size());
+    }
+
+    /**
+     * List the entries of the zip or tar.gz request body as name=content lines
+     */
+    private static class ArchiveListingHandler extends AbstractHandler {
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            StringBuilder listing = new StringBuilder();
+            if ("application/zip".equals(request.getContentType())) {
+                ZipInputStream zip = new ZipInputStream(request.getInputStream());
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    listing.append(entry.getName()).append('=').append(IOUtils.toString(zip)).append('\n');
+                }
+            } else {
+                TarInputStream tar = new TarInputStream(new GZIPInputStream(request.getInputStream()));
+                TarEntry entry;
+                while ((entry = tar.getNextEntry()) != null) {
+                    listing.append(entry.getName()).append('=').append(IOUtils.toString(tar)).append('\n');
+                }
+            }
+            response.setStatus(200);
+            response.getOutputStream().write(listing.toString().getBytes());
+            response.getOutputStream().close();
+        }
+    }
+
+    @Test
+    public void testArchiveEntity() throws Exception {
+        httpServerShell.setHandler(new ArchiveListingHandler());
+
+        File sdkDir = new File(tempDir, "sdk");
+        FileUtils.writeStringToFile(new File(sdkDir, "bin/tool"), "tool");
+        FileUtils.writeStringToFile(new File(sdkDir, "lib/lib.jar"), "lib");
+
+        // the async engine reads the archive through a pipe
+        for (String engine : new String[] { AbstractHttpClientTask.ENGINE_SYNC, AbstractHttpClientTask.ENGINE_ASYNC }) {
+            for (String format : new String[] { "zip", "tar.gz" }) {
+                PutHttpClientTask task = new PutHttpClientTask();
+                task.setProject(project);
+                task.setEngine(engine);
+                task.setUri(httpServerShell.getHttpServerUri());
+                task.setExpectedStatus(200);
+                task.setResponseProperty("listing-" + engine + "-" + format);
+                ArchiveEntityNode entity = new ArchiveEntityNode();
+                entity.setFormat(format);
+                FileSet fileSet = new FileSet();
+                fileSet.setProject(project);
+                fileSet.setDir(sdkDir);
+                entity.add(fileSet);
+                // a resource which size is only known once read
+                entity.add(new Resource("etc/unknown", true, 0, false, Resource.UNKNOWN_SIZE) {
+                    @Override
+                    public InputStream getInputStream() throws IOException {
+                        return new ByteArrayInputStream("unknown".getBytes());
+                    }
+                });
+                task.add(entity);
+                task.execute();
+
+                assertEquals("bin/tool=tool\nlib/lib.jar=lib\netc/unknown=unknown\n",
+                        project.getProperty("listing-" + engine + "-" + format));
+            }
+        }
+    }
+
     @Test
     public void testMultiPart() throws Exception {
         RequestHandler handler = new RequestHandler();
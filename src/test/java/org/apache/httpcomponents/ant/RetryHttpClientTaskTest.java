@@ -0,0 +1,251 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RetryHttpClientTaskTest {
+
+    private static HTTPServerShell httpServerShell = new HTTPServerShell();
+
+    private Project project;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        httpServerShell.startServer();
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        httpServerShell.stopServer();
+    }
+
+    @Before
+    public void before() {
+        project = new Project();
+    }
+
+    /**
+     * Fail with the given status a number of times, then echo the request body, decoded if gzipped
+     */
+    private static class FailingHandler extends AbstractHandler {
+
+        private final int status;
+
+        private final int failures;
+
+        private final AtomicInteger requests = new AtomicInteger();
+
+        FailingHandler(int status, int failures) {
+            this.status = status;
+            this.failures = failures;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            InputStream in = request.getInputStream();
+            if ("gzip".equals(request.getHeader("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+            String body = IOUtils.toString(in);
+            if (requests.incrementAndGet() <= failures) {
+                response.setStatus(status);
+                response.setHeader("Retry-After", "0");
+                response.getOutputStream().write("try later".getBytes());
+            } else {
+                response.setStatus(200);
+                response.getOutputStream().write(body.getBytes());
+            }
+            response.getOutputStream().close();
+        }
+    }
+
+    private RetryNode buildRetry(int attempts) {
+        RetryNode retry = new RetryNode();
+        retry.setAttempts(attempts);
+        retry.setBackoff(10);
+        return retry;
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        FailingHandler handler = new FailingHandler(503, 2);
+        httpServerShell.setHandler(handler);
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setExpectedStatus(200);
+        task.add(buildRetry(3));
+        task.execute();
+
+        assertEquals(3, handler.requests.get());
+    }
+
+    @Test
+    public void testRetryExhausted() throws Exception {
+        FailingHandler handler = new FailingHandler(429, 5);
+        httpServerShell.setHandler(handler);
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setStatusProperty("status");
+        task.add(buildRetry(3));
+        task.execute();
+
+        assertEquals(3, handler.requests.get());
+        assertEquals("429", project.getProperty("status"));
+    }
+
+    @Test
+    public void testNotRetriedStatus() throws Exception {
+        FailingHandler handler = new FailingHandler(404, 1);
+        httpServerShell.setHandler(handler);
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setStatusProperty("status");
+        task.add(buildRetry(3));
+        task.execute();
+
+        assertEquals(1, handler.requests.get());
+        assertEquals("404", project.getProperty("status"));
+    }
+
+    @Test
+    public void testNotIdempotent() throws Exception {
+        FailingHandler handler = new FailingHandler(503, 1);
+        httpServerShell.setHandler(handler);
+
+        PostHttpClientTask task = new PostHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setExpectedStatus(200);
+        task.add(buildRetry(3));
+        try {
+            task.execute();
+            fail("The POST should not have been retried");
+        } catch (BuildException e) {
+            // expected
+        }
+        assertEquals(1, handler.requests.get());
+    }
+
+    @Test
+    public void testForcedRetryWithEntity() throws Exception {
+        FailingHandler handler = new FailingHandler(503, 2);
+        httpServerShell.setHandler(handler);
+
+        String data = "Ant and HttpClient rulez";
+
+        PostHttpClientTask task = new PostHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setExpectedStatus(200);
+        task.setResponseProperty("response");
+        BasicEntityNode entity = new BasicEntityNode();
+        entity.setValue(data);
+        task.add(entity);
+        RetryNode retry = buildRetry(3);
+        retry.setForce(true);
+        task.add(retry);
+        task.execute();
+
+        assertEquals(3, handler.requests.get());
+        assertEquals(data, project.getProperty("response"));
+    }
+
+    @Test
+    public void testForcedRetryWithCompressedEntity() throws Exception {
+        FailingHandler handler = new FailingHandler(503, 1);
+        httpServerShell.setHandler(handler);
+
+        String data = "Ant and HttpClient rulez";
+
+        PostHttpClientTask task = new PostHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setExpectedStatus(200);
+        task.setResponseProperty("response");
+        BasicEntityNode entity = new BasicEntityNode();
+        entity.setValue(data);
+        entity.setCompress("gzip");
+        task.add(entity);
+        RetryNode retry = buildRetry(2);
+        retry.setForce(true);
+        task.add(retry);
+        task.execute();
+
+        assertEquals(2, handler.requests.get());
+        assertEquals(data, project.getProperty("response"));
+    }
+
+    @Test
+    public void testAsyncRetry() throws Exception {
+        FailingHandler handler = new FailingHandler(503, 1);
+        httpServerShell.setHandler(handler);
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setEngine(AbstractHttpClientTask.ENGINE_ASYNC);
+        task.setExpectedStatus(200);
+        task.add(buildRetry(2));
+        task.execute();
+
+        assertEquals(2, handler.requests.get());
+    }
+
+    @Test
+    public void testDelay() throws Exception {
+        RetryNode retry = new RetryNode();
+        retry.setBackoff(1000);
+        retry.setMaxDelay(3000);
+        retry.checkAttributes();
+        for (int i = 0; i < 10; i++) {
+            long delay = retry.getDelay(1, null);
+            assertTrue(delay >= 500 && delay <= 1000);
+            delay = retry.getDelay(5, null);
+            assertTrue(delay >= 1500 && delay <= 3000);
+        }
+    }
+}
@@ -17,10 +17,14 @@
  */
 package org.apache.httpcomponents.ant;
 
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.junit.AfterClass;
@@ -77,4 +81,60 @@ public class SSLHttpClientTaskTest {
         task.execute();
     }
 
+    @Test
+    public void testSSLAsync() throws Exception {
+        httpServerShell.setHandler(HTTPServerShell.PING_HANDLER);
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpsServerUri());
+        task.setEngine("async");
+        task.setExpectedStatus(200);
+        SSLNode ssl = new SSLNode();
+        ssl.setTruststoreFile(new File(this.getClass().getResource(HTTPServerShell.KEYSTORE).toURI()));
+        ssl.setTruststorePassword(HTTPServerShell.KEYSTORE_PASSWORD);
+        task.add(ssl);
+        task.execute();
+    }
+
+    @Test
+    public void testSSLFactoryCache() throws Exception {
+        httpServerShell.setHandler(HTTPServerShell.PING_HANDLER);
+
+        File truststore = File.createTempFile("httpant-truststore", ".jks");
+        try {
+            FileUtils.copyURLToFile(this.getClass().getResource(HTTPServerShell.KEYSTORE), truststore);
+
+            GetHttpClientTask task = new GetHttpClientTask();
+            task.setProject(project);
+            SSLNode ssl = new SSLNode();
+            ssl.setTruststoreFile(truststore);
+            ssl.setTruststorePassword(HTTPServerShell.KEYSTORE_PASSWORD);
+
+            SSLSocketFactory factory = ssl.buildSSLSocketFactory(task);
+            assertSame(factory, ssl.buildSSLSocketFactory(task));
+
+            long lastModified = truststore.lastModified();
+            truststore.setLastModified(lastModified - 10000);
+            assertNotSame(factory, ssl.buildSSLSocketFactory(task));
+
+            // the factory of the previous version has been replaced, not kept aside
+            truststore.setLastModified(lastModified);
+            assertNotSame(factory, ssl.buildSSLSocketFactory(task));
+
+            for (int i = 0; i < 2; i++) {
+                task = new GetHttpClientTask();
+                task.setProject(project);
+                task.setUri(httpServerShell.getHttpsServerUri());
+                task.setExpectedStatus(200);
+                ssl = new SSLNode();
+                ssl.setTruststoreFile(truststore);
+                ssl.setTruststorePassword(HTTPServerShell.KEYSTORE_PASSWORD);
+                task.add(ssl);
+                task.execute();
+            }
+        } finally {
+            truststore.delete();
+        }
+    }
 }
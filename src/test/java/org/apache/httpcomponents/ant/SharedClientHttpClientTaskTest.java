@@ -0,0 +1,354 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.impl.client.cache.HeapResource;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.Reference;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SharedClientHttpClientTaskTest {
+
+    private static HTTPServerShell httpServerShell = new HTTPServerShell();
+
+    private Project project;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        httpServerShell.startServer();
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        httpServerShell.stopServer();
+    }
+
+    @Before
+    public void before() {
+        project = new Project();
+    }
+
+    private HttpClientNode declareClient(String id) {
+        HttpClientNode client = new HttpClientNode();
+        client.setProject(project);
+        project.addReference(id, client);
+        return client;
+    }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        final Set<Integer> remotePorts = new HashSet<Integer>();
+        httpServerShell.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                remotePorts.add(baseRequest.getRemotePort());
+                HTTPServerShell.PING_HANDLER.handle(target, baseRequest, request, response);
+            }
+        });
+
+        HttpClientNode client = declareClient("client");
+        client.setMaxPerRoute(1);
+
+        for (int i = 0; i < 5; i++) {
+            GetHttpClientTask task = new GetHttpClientTask();
+            task.setProject(project);
+            task.setUri(httpServerShell.getHttpServerUri());
+            task.setClientRef(new Reference(project, "client"));
+            task.setExpectedStatus(200);
+            task.setResponseProperty("response" + i);
+            task.execute();
+            assertEquals(HTTPServerShell.PING_RESPONSE, project.getProperty("response" + i));
+        }
+
+        assertEquals(1, remotePorts.size());
+        client.shutdown();
+    }
+
+    @Test
+    public void testShutdownOnBuildFinished() throws Exception {
+        httpServerShell.setHandler(HTTPServerShell.PING_HANDLER);
+
+        HttpClientNode client = declareClient("client");
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        task.setClientRef(new Reference(project, "client"));
+        task.setExpectedStatus(200);
+        task.execute();
+
+        HttpClient httpClient = client.getClient(task);
+        assertSame(httpClient, client.getClient(task));
+
+        project.fireBuildFinished(null);
+
+        assertNotSame(httpClient, client.getClient(task));
+        client.shutdown();
+    }
+
+    @Test
+    public void testSSLOnTaskWithClientRef() throws Exception {
+        declareClient("client");
+
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpsServerUri());
+        task.setClientRef(new Reference(project, "client"));
+        SSLNode ssl = new SSLNode();
+        ssl.setTruststoreFile(new File(this.getClass().getResource(HTTPServerShell.KEYSTORE).toURI()));
+        ssl.setTruststorePassword(HTTPServerShell.KEYSTORE_PASSWORD);
+        task.add(ssl);
+        try {
+            task.execute();
+            fail("Expecting BuildException : ssl should be set on the shared client");
+        } catch (BuildException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testSharedSSL() throws Exception {
+        httpServerShell.setHandler(HTTPServerShell.PING_HANDLER);
+
+        HttpClientNode client = declareClient("client");
+        SSLNode ssl = new SSLNode();
+        ssl.setTruststoreFile(new File(this.getClass().getResource(HTTPServerShell.KEYSTORE).toURI()));
+        ssl.setTruststorePassword(HTTPServerShell.KEYSTORE_PASSWORD);
+        client.add(ssl);
+
+        for (String uri : new String[] { httpServerShell.getHttpsServerUri(), httpServerShell.getHttpServerUri() }) {
+            GetHttpClientTask task = new GetHttpClientTask();
+            task.setProject(project);
+            task.setUri(uri);
+            task.setClientRef(new Reference(project, "client"));
+            task.setExpectedStatus(200);
+            task.execute();
+        }
+        client.shutdown();
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        httpServerShell.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                requests.incrementAndGet();
+                response.addHeader("Cache-Control", "max-age=60");
+                HTTPServerShell.PING_HANDLER.handle(target, baseRequest, request, response);
+            }
+        });
+
+        File cacheDir = File.createTempFile("httpant-cache", "");
+        cacheDir.delete();
+        try {
+            String[] expectedStatus = new String[] { "miss", "hit", "hit" };
+            for (int i = 0; i < expectedStatus.length; i++) {
+                // a new build each time, the cache being kept on disk
+                project = new Project();
+                HttpClientNode client = declareClient("client");
+                client.setCacheDir(cacheDir);
+
+                GetHttpClientTask task = new GetHttpClientTask();
+                task.setProject(project);
+                task.setUri(httpServerShell.getHttpServerUri() + "/cached");
+                task.setClientRef(new Reference(project, "client"));
+                task.setExpectedStatus(200);
+                task.setResponseProperty("response");
+                task.setCacheStatusProperty("cacheStatus");
+                task.execute();
+                client.shutdown();
+
+                assertEquals(HTTPServerShell.PING_RESPONSE, project.getProperty("response"));
+                assertEquals(expectedStatus[i], project.getProperty("cacheStatus"));
+            }
+            assertEquals(1, requests.get());
+        } finally {
+            FileUtils.deleteDirectory(cacheDir);
+        }
+    }
+
+    @Test
+    public void testCacheForeignEntry() throws Exception {
+        File cacheDir = File.createTempFile("httpant-cache", "");
+        cacheDir.delete();
+        try {
+            FileCacheStorage storage = new FileCacheStorage(cacheDir, 1024 * 1024);
+            storage.putEntry("key", new HttpCacheEntry(new Date(), new Date(), new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                    new Header[0], new HeapResource("body".getBytes())));
+            assertNotNull(storage.getEntry("key"));
+
+            // any other serialized object is ignored
+            File[] entries = cacheDir.listFiles();
+            assertEquals(1, entries.length);
+            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(entries[0]));
+            out.writeObject(new String[] { "foreign" });
+            out.close();
+            assertNull(storage.getEntry("key"));
+            assertFalse(entries[0].exists());
+        } finally {
+            FileUtils.deleteDirectory(cacheDir);
+        }
+    }
+
+    /**
+     * Open a session on /login, and serve only the requests of the session otherwise
+     */
+    private static final AbstractHandler SESSION_HANDLER = new AbstractHandler() {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            if (target.equals("/login")) {
+                Cookie session = new Cookie("session", "s1");
+                session.setMaxAge(3600);
+                response.addCookie(session);
+                // not kept across builds
+                response.addCookie(new Cookie("temporary", "t1"));
+                response.setStatus(204);
+                return;
+            }
+            boolean inSession = false;
+            if (request.getCookies() != null) {
+                for (Cookie cookie : request.getCookies()) {
+                    inSession |= cookie.getName().equals("session") && cookie.getValue().equals("s1");
+                }
+            }
+            if (!inSession) {
+                response.setStatus(403);
+                return;
+            }
+            HTTPServerShell.PING_HANDLER.handle(target, baseRequest, request, response);
+        }
+    };
+
+    private CookieStoreNode declareCookies(String id, File file) {
+        CookieStoreNode cookies = new CookieStoreNode();
+        cookies.setProject(project);
+        cookies.setFile(file);
+        project.addReference(id, cookies);
+        return cookies;
+    }
+
+    private GetHttpClientTask buildGet(String path, String cookiesRef, int expectedStatus) {
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri() + path);
+        if (cookiesRef != null) {
+            task.setCookiesRef(new Reference(project, cookiesRef));
+        }
+        task.setExpectedStatus(expectedStatus);
+        return task;
+    }
+
+    @Test
+    public void testSharedCookies() throws Exception {
+        httpServerShell.setHandler(SESSION_HANDLER);
+
+        File file = File.createTempFile("httpant-cookies", "");
+        file.delete();
+        try {
+            declareCookies("cookies", file);
+            buildGet("/login", "cookies", 204).execute();
+            buildGet("/resource", "cookies", 200).execute();
+            buildGet("/resource", null, 403).execute();
+            project.fireBuildFinished(null);
+
+            String saved = FileUtils.readFileToString(file);
+            assertTrue(saved.contains("session\ts1\t"));
+            assertFalse(saved.contains("temporary"));
+            if (file.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                assertFalse(Files.getPosixFilePermissions(file.toPath()).contains(PosixFilePermission.OTHERS_READ));
+            }
+
+            // the next build reuses the session
+            project = new Project();
+            declareCookies("cookies", file);
+            buildGet("/resource", "cookies", 200).execute();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSharedClientCookiesNotShared() throws Exception {
+        httpServerShell.setHandler(SESSION_HANDLER);
+        HttpClientNode client = declareClient("client");
+        try {
+            GetHttpClientTask task = buildGet("/login", null, 204);
+            task.setClientRef(new Reference(project, "client"));
+            task.execute();
+
+            // the session of the previous task is not sent
+            task = buildGet("/resource", null, 403);
+            task.setClientRef(new Reference(project, "client"));
+            task.execute();
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testCookiesRefNotCookies() throws Exception {
+        declareClient("client");
+        try {
+            buildGet("/resource", "client", 200).execute();
+            fail("The reference should be rejected");
+        } catch (BuildException e) {
+            // expected
+        }
+    }
+}
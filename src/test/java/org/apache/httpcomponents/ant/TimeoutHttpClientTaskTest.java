@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.httpcomponents.ant;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TimeoutHttpClientTaskTest {
+
+    private static HTTPServerShell httpServerShell = new HTTPServerShell();
+
+    private Project project;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        httpServerShell.startServer();
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        httpServerShell.stopServer();
+    }
+
+    @Before
+    public void before() {
+        project = new Project();
+    }
+
+    /**
+     * Stall before sending the headers, or in the middle of the body
+     */
+    private static class StallingHandler extends AbstractHandler {
+
+        private final boolean stallInBody;
+
+        StallingHandler(boolean stallInBody) {
+            this.stallInBody = stallInBody;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+                ServletException {
+            try {
+                if (stallInBody) {
+                    response.setStatus(200);
+                    response.setContentLength(2048);
+                    response.getOutputStream().write(new byte[1024]);
+                    response.flushBuffer();
+                }
+                Thread.sleep(3000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private GetHttpClientTask buildGet() {
+        GetHttpClientTask task = new GetHttpClientTask();
+        task.setProject(project);
+        task.setUri(httpServerShell.getHttpServerUri());
+        return task;
+    }
+
+    private BuildException executeFailing(AbstractHttpClientTask task) {
+        long start = System.currentTimeMillis();
+        try {
+            task.execute();
+        } catch (BuildException e) {
+            assertTrue(System.currentTimeMillis() - start < 2500);
+            return e;
+        }
+        fail("The task should have timed out");
+        return null;
+    }
+
+    @Test
+    public void testSocketTimeout() throws Exception {
+        httpServerShell.setHandler(new StallingHandler(false));
+
+        GetHttpClientTask task = buildGet();
+        task.setSocketTimeout(1000);
+        executeFailing(task);
+    }
+
+    @Test
+    public void testSharedClientSocketTimeout() throws Exception {
+        httpServerShell.setHandler(new StallingHandler(false));
+
+        HttpClientNode client = new HttpClientNode();
+        client.setProject(project);
+        client.setSocketTimeout(1000);
+        GetHttpClientTask task = buildGet();
+        task.setDefaultClient(client);
+        try {
+            executeFailing(task);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeadlineWaitingResponse() throws Exception {
+        httpServerShell.setHandler(new StallingHandler(false));
+
+        GetHttpClientTask task = buildGet();
+        task.setDeadline(1000);
+        BuildException e = executeFailing(task);
+        assertTrue(e.getMessage(), e.getMessage().contains("waiting for the response"));
+
+        // the same task executed again, as by <retry>, is not affected by the expired deadline
+        httpServerShell.setHandler(HTTPServerShell.PING_HANDLER);
+        task.setExpectedStatus(200);
+        task.execute();
+    }
+
+    @Test
+    public void testDeadlineReadingBody() throws Exception {
+        httpServerShell.setHandler(new StallingHandler(true));
+
+        GetHttpClientTask task = buildGet();
+        task.setResponseProperty("response");
+        task.setDeadline(1000);
+        BuildException e = executeFailing(task);
+        assertTrue(e.getMessage(), e.getMessage().contains("reading the response body"));
+    }
+
+    @Test
+    public void testAsyncDeadline() throws Exception {
+        httpServerShell.setHandler(new StallingHandler(false));
+
+        GetHttpClientTask task = buildGet();
+        task.setEngine(AbstractHttpClientTask.ENGINE_ASYNC);
+        task.setDeadline(1000);
+        BuildException e = executeFailing(task);
+        assertTrue(e.getMessage(), e.getMessage().contains("deadline"));
+    }
+}